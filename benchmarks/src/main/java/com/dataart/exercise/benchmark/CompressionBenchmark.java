@@ -0,0 +1,138 @@
+package com.dataart.exercise.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import com.dataart.exercise.Action;
+import com.dataart.exercise.Compression;
+import com.dataart.exercise.dto.MessageDto;
+import com.dataart.exercise.server.MessageCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of the response compression against the bandwidth it saves, on LIST_SIGHTING responses.
+ * The compression ratio of every payload is printed when its trial starts:
+ *
+ * <pre>
+ * mvn -P benchmarks package
+ * java -jar benchmarks/target/benchmarks.jar CompressionBenchmark
+ * </pre>
+ *
+ * compress and inflate measure the body alone, on the server and on the client side. writeResponse measures
+ * the whole response as the server sends it, with the default compression threshold of the server
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ * @see com.dataart.exercise.Compression
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompressionBenchmark {
+
+    /**
+     * Default compression threshold of the server
+     */
+    private static final int COMPRESSION_THRESHOLD = 8192;
+
+    /**
+     * Number of the found sightings
+     */
+    @Param({"100", "1000", "10000"})
+    int sightings;
+    /**
+     * Compression offered by the client
+     */
+    @Param({"IDENTITY", "DEFLATE"})
+    Compression compression;
+    /**
+     * Request which offers the compression
+     */
+    private MessageDto request;
+    /**
+     * Response to the request
+     */
+    private MessageDto response;
+    /**
+     * Serialized response body
+     */
+    private byte[] body;
+    /**
+     * Compressed body, read again after reset
+     */
+    private ByteArrayInputStream compressed;
+    /**
+     * Buffer of the inflated body
+     */
+    private final byte[] readBuffer = new byte[8192];
+    /**
+     * Connection which discards the response
+     */
+    private final OutputStream connection = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Setup
+    public void setUp() throws IOException {
+        request = new MessageDto(Action.LIST_SIGHTING, null);
+        request.setCompression(compression);
+        response = Payloads.listSightingResponse(sightings);
+        body = (JSON.toJSONString(response) + "\n").getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream os = compression.wrap(bytes)) {
+            os.write(body);
+        }
+        compressed = new ByteArrayInputStream(bytes.toByteArray());
+        System.out.printf("%n%d sightings, %s: %d -> %d bytes, ratio %.3f%n", sightings, compression, body.length,
+                bytes.size(), (double) bytes.size() / body.length);
+    }
+
+    @Benchmark
+    public void compress() throws IOException {
+        try (OutputStream os = compression.wrap(connection)) {
+            os.write(body);
+        }
+    }
+
+    @Benchmark
+    public long inflate() throws IOException {
+        compressed.reset();
+        long total = 0;
+        try (InputStream is = compression.wrap(compressed)) {
+            for (int read = is.read(readBuffer); read >= 0; read = is.read(readBuffer)) {
+                total += read;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long writeResponse() throws IOException {
+        return MessageCodec.writeResponse(request, response, COMPRESSION_THRESHOLD, connection).getSentBytes();
+    }
+}
@@ -0,0 +1,144 @@
+package com.dataart.exercise.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import com.dataart.exercise.Action;
+import com.dataart.exercise.Compression;
+import com.dataart.exercise.dto.MessageDto;
+import com.dataart.exercise.entity.Sighting;
+import com.dataart.exercise.request.SightingsRequest;
+import com.dataart.exercise.server.MessageCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading a request and writing a response with MessageCodec. Run it with the GC profiler to see
+ * the bytes allocated per operation:
+ *
+ * <pre>
+ * mvn -P benchmarks package
+ * java -jar benchmarks/target/benchmarks.jar MessageCodecBenchmark -prof gc
+ * </pre>
+ *
+ * The steady state of a thread reuses its buffers, lexer, parser and serializer, so gc.alloc.rate.norm
+ * is left to the decoded entities, the events and the compressing stream of a response
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ * @see com.dataart.exercise.server.MessageCodec
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCodecBenchmark {
+
+    /**
+     * Request lines as sent by the client
+     */
+    @State(Scope.Thread)
+    public static class Requests {
+
+        /**
+         * ADD_SIGHTING request line
+         */
+        ByteArrayInputStream addSighting;
+        /**
+         * LIST_SIGHTING request line
+         */
+        ByteArrayInputStream listSighting;
+
+        @Setup
+        public void setUp() {
+            addSighting = line(new MessageDto(Action.ADD_SIGHTING,
+                    new Sighting("Red Hawk", "Lake Ontario 42", LocalDateTime.of(2026, 10, 12, 10, 0))));
+            MessageDto listRequest = new MessageDto(Action.LIST_SIGHTING,
+                    new SightingsRequest("Red.*", LocalDate.of(2026, 1, 1), LocalDate.of(2026, 12, 31), null));
+            listRequest.setCompression(Compression.DEFLATE);
+            listSighting = line(listRequest);
+        }
+
+        /**
+         * Request line of a message
+         *
+         * @param request request from the client
+         * @return ByteArrayInputStream with the line, read again after reset
+         */
+        private static ByteArrayInputStream line(MessageDto request) {
+            return new ByteArrayInputStream((JSON.toJSONString(request) + "\n").getBytes(Charset.defaultCharset()));
+        }
+    }
+
+    /**
+     * Response to a LIST_SIGHTING request
+     */
+    @State(Scope.Thread)
+    public static class Responses {
+
+        /**
+         * Number of the found sightings
+         */
+        @Param({"10", "1000"})
+        int sightings;
+        /**
+         * Request which does not offer a compression
+         */
+        final MessageDto plainRequest = new MessageDto(Action.LIST_SIGHTING, null);
+        /**
+         * Response to the request
+         */
+        MessageDto response;
+        /**
+         * Connection which discards the response
+         */
+        final OutputStream connection = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+
+        @Setup
+        public void setUp() {
+            response = Payloads.listSightingResponse(sightings);
+        }
+    }
+
+    @Benchmark
+    public MessageDto readAddSighting(Requests requests) throws IOException {
+        requests.addSighting.reset();
+        return MessageCodec.readRequest(requests.addSighting);
+    }
+
+    @Benchmark
+    public MessageDto readListSighting(Requests requests) throws IOException {
+        requests.listSighting.reset();
+        return MessageCodec.readRequest(requests.listSighting);
+    }
+
+    @Benchmark
+    public long writeListSighting(Responses responses) throws IOException {
+        return MessageCodec.writeResponse(responses.plainRequest, responses.response, Integer.MAX_VALUE,
+                responses.connection).getSentBytes();
+    }
+}
@@ -0,0 +1,63 @@
+package com.dataart.exercise.benchmark;
+
+import com.dataart.exercise.Action;
+import com.dataart.exercise.dto.MessageDto;
+import com.dataart.exercise.entity.Sighting;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Messages for the benchmarks. The content is generated from a fixed seed, so every run measures the same payloads
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ */
+final class Payloads {
+
+    /**
+     * Names of the birds
+     */
+    private static final String[] BIRDS = {"Red Hawk", "Blue Jay", "Barn Owl", "Mute Swan", "Common Raven",
+            "Great Tit", "Grey Heron", "Mallard", "Eurasian Wren", "Golden Eagle"};
+    /**
+     * Locations of the sightings
+     */
+    private static final String[] LOCATIONS = {"Lake Ontario", "Central Park", "Richmond Park", "Danube Delta",
+            "Black Forest", "Camargue", "Lake Geneva", "Hortobagy", "Dartmoor", "Bialowieza Forest"};
+
+    private Payloads() {
+    }
+
+    /**
+     * Sightings as found by a LIST_SIGHTING query: a few birds, each seen many times at a few locations
+     *
+     * @param count number of the sightings
+     * @return List of the sightings
+     */
+    static List<Sighting> sightings(int count) {
+        Random random = new Random(count);
+        LocalDateTime start = LocalDateTime.of(2026, 1, 1, 0, 0);
+        List<Sighting> sightings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            sightings.add(new Sighting(BIRDS[random.nextInt(BIRDS.length)],
+                    LOCATIONS[random.nextInt(LOCATIONS.length)] + " " + random.nextInt(100),
+                    start.plusMinutes(random.nextInt(365 * 24 * 60))));
+        }
+        return sightings;
+    }
+
+    /**
+     * Response to a LIST_SIGHTING request
+     *
+     * @param count number of the found sightings
+     * @return MessageDto response
+     */
+    static MessageDto listSightingResponse(int count) {
+        MessageDto response = new MessageDto(Action.LIST_SIGHTING, sightings(count));
+        response.setVersion(1792409210790003L);
+        return response;
+    }
+}
@@ -13,6 +13,8 @@ public enum Action {
     LIST_BIRDS ("-listbirds"),
     LIST_SIGHTING ("-listsightings"),
     REMOVE ("-remove"),
+    STATUS ("-status"),
+    WATCH ("-watch"),
     QUIT ("-quit");
 
     /**
@@ -0,0 +1,87 @@
+package com.dataart.exercise;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compression of a response body. A client offers a compression in a request, and the server
+ * sends a compressed body only if the response is large enough
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ */
+public enum Compression {
+
+    /**
+     * The body is not compressed
+     */
+    IDENTITY {
+        @Override
+        public OutputStream wrap(OutputStream os) {
+            return os;
+        }
+
+        @Override
+        public InputStream wrap(InputStream is) {
+            return is;
+        }
+    },
+    /**
+     * The body is compressed with Deflate, tuned for speed rather than for ratio
+     */
+    DEFLATE {
+        @Override
+        public OutputStream wrap(OutputStream os) {
+            return new DeflaterOutputStream(os, new Deflater(Deflater.BEST_SPEED), BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        def.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public InputStream wrap(InputStream is) {
+            return new InflaterInputStream(is, new Inflater(), BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inf.end();
+                    }
+                }
+            };
+        }
+    };
+
+    /**
+     * Size of the buffers of the compressing streams
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Wrap a stream to compress the data written to it
+     *
+     * @param os stream to write the compressed data
+     * @return OutputStream to write the original data
+     */
+    public abstract OutputStream wrap(OutputStream os);
+
+    /**
+     * Wrap a stream to decompress the data read from it
+     *
+     * @param is stream to read the compressed data
+     * @return InputStream to read the original data
+     */
+    public abstract InputStream wrap(InputStream is);
+}
@@ -0,0 +1,109 @@
+package com.dataart.exercise;
+
+import java.util.Locale;
+
+/**
+ * Unit of a bird measure. The weight of a bird is stored in kilograms and the height in centimeters,
+ * a value entered in other units is converted when the bird is added
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ * @see com.dataart.exercise.entity.Bird
+ */
+public enum MeasureUnit {
+
+    GRAM(true, 0.001, "g", "gram", "grams"),
+    KILOGRAM(true, 1, "kg", "kilogram", "kilograms"),
+    OUNCE(true, 0.028349523125, "oz", "ounce", "ounces"),
+    POUND(true, 0.45359237, "lb", "lbs", "pound", "pounds"),
+    MILLIMETER(false, 0.1, "mm", "millimeter", "millimeters"),
+    CENTIMETER(false, 1, "cm", "centimeter", "centimeters"),
+    METER(false, 100, "m", "meter", "meters"),
+    INCH(false, 2.54, "in", "inch", "inches"),
+    FOOT(false, 30.48, "ft", "foot", "feet");
+
+    /**
+     * TRUE for a unit of weight, FALSE for a unit of length
+     */
+    private final boolean isWeight;
+    /**
+     * Number of the base units, kilograms or centimeters, in the unit
+     */
+    private final double factor;
+    /**
+     * Names of the unit accepted in a value
+     */
+    private final String[] names;
+
+    MeasureUnit(boolean isWeight, double factor, String... names) {
+        this.isWeight = isWeight;
+        this.factor = factor;
+        this.names = names;
+    }
+
+    /**
+     * Convert a weight to kilograms
+     *
+     * @param value number with an optional unit, for example <i>1.5</i>, <i>300 g</i> or <i>2lb</i>. Kilograms if no unit
+     * @return weight in kilograms or null if the value is empty
+     * @throws IllegalArgumentException if the value is not a non-negative weight
+     */
+    public static Double toKilograms(String value) {
+        return normalize(value, true, KILOGRAM);
+    }
+
+    /**
+     * Convert a height to centimeters
+     *
+     * @param value number with an optional unit, for example <i>25</i>, <i>0.3 m</i> or <i>10in</i>. Centimeters if no unit
+     * @return height in centimeters or null if the value is empty
+     * @throws IllegalArgumentException if the value is not a non-negative height
+     */
+    public static Double toCentimeters(String value) {
+        return normalize(value, false, CENTIMETER);
+    }
+
+    /**
+     * Convert a value to the base unit of its kind
+     *
+     * @param value number with an optional unit
+     * @param isWeight kind of the value
+     * @param defaultUnit unit of a value without a unit
+     * @return converted value or null if the value is empty
+     * @throws IllegalArgumentException if the value cannot be converted
+     */
+    private static Double normalize(String value, boolean isWeight, MeasureUnit defaultUnit) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        String text = value.trim().toLowerCase(Locale.ROOT);
+        int numberEnd = 0;
+        while (numberEnd < text.length() && (Character.isDigit(text.charAt(numberEnd)) || text.charAt(numberEnd) == '.'
+                || text.charAt(numberEnd) == ',' || numberEnd == 0 && text.charAt(numberEnd) == '-')) {
+            numberEnd++;
+        }
+        double number;
+        try {
+            number = Double.parseDouble(text.substring(0, numberEnd).replace(',', '.'));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + value);
+        }
+        if (number < 0 || Double.isInfinite(number)) {
+            throw new IllegalArgumentException("Value should not be negative: " + value);
+        }
+        String unitName = text.substring(numberEnd).trim();
+        if (unitName.isEmpty()) {
+            return number * defaultUnit.factor;
+        }
+        for (MeasureUnit unit : values()) {
+            if (unit.isWeight == isWeight) {
+                for (String name : unit.names) {
+                    if (name.equals(unitName)) {
+                        return number * unit.factor;
+                    }
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unknown unit of " + (isWeight ? "weight" : "height") + ": " + unitName);
+    }
+}
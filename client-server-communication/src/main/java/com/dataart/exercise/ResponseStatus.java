@@ -0,0 +1,28 @@
+package com.dataart.exercise;
+
+/**
+ * Status of a response from the server
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ */
+public enum ResponseStatus {
+
+    /**
+     * The request was processed
+     */
+    OK,
+    /**
+     * The server is overloaded and rejected the request without processing, the client may retry later
+     */
+    BUSY,
+    /**
+     * The data did not change since the version known to the client, the response has no object
+     */
+    NOT_MODIFIED,
+    /**
+     * The response has only the changes since the version known to the client
+     */
+    DELTA
+
+}
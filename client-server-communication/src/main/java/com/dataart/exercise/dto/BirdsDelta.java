@@ -0,0 +1,35 @@
+package com.dataart.exercise.dto;
+
+import com.dataart.exercise.entity.Bird;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * Changes of the bird list since a version known to the client
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ * @see com.dataart.exercise.ResponseStatus#DELTA
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+public class BirdsDelta {
+
+    /**
+     * Birds added or changed since the version
+     */
+    @Getter
+    @Setter
+    private List<Bird> birds;
+
+    /**
+     * Names of the birds removed since the version
+     */
+    @Getter
+    @Setter
+    private List<String> removedNames;
+}
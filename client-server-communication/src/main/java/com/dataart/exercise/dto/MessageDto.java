@@ -1,6 +1,8 @@
 package com.dataart.exercise.dto;
 
 import com.dataart.exercise.Action;
+import com.dataart.exercise.Compression;
+import com.dataart.exercise.ResponseStatus;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -28,6 +30,44 @@ public class MessageDto {
     @Setter
     String comment;
 
+    @Getter
+    @Setter
+    ResponseStatus status;
+
+    /**
+     * Compression of the response accepted by the client. If empty then the response is never compressed
+     */
+    @Getter
+    @Setter
+    Compression compression;
+
+    /**
+     * Version of the server data reflected by the response
+     */
+    @Getter
+    @Setter
+    Long version;
+
+    /**
+     * Version of the data known to the client. If the data is not newer then the list is not sent again
+     */
+    @Getter
+    @Setter
+    Long ifNewerThan;
+
+    /**
+     * Constructor for MessageDto
+     *
+     * @param action current action
+     * @param object transferred object
+     * @param comment comment
+     */
+    public MessageDto(Action action, Object object, String comment) {
+        this.action = action;
+        this.object = object;
+        this.comment = comment;
+    }
+
     /**
      * Constructor for MessageDto
      *
@@ -47,4 +87,15 @@ public class MessageDto {
     public MessageDto(String comment) {
         this.comment = comment;
     }
+
+    /**
+     * Constructor for MessageDto
+     *
+     * @param status status of the response
+     * @param comment comment from the server
+     */
+    public MessageDto(ResponseStatus status, String comment) {
+        this.status = status;
+        this.comment = comment;
+    }
 }
@@ -10,6 +10,7 @@ import lombok.Setter;
  *
  * @author Eugene Lapin
  * @version 1.0
+ * @see com.dataart.exercise.MeasureUnit
  */
 @NoArgsConstructor
 @AllArgsConstructor
@@ -22,11 +23,17 @@ public class Bird {
     @Setter
     private String color;
 
+    /**
+     * Weight of the bird in kilograms, null if unknown
+     */
     @Getter
     @Setter
-    private String weight;
+    private Double weight;
 
+    /**
+     * Height of the bird in centimeters, null if unknown
+     */
     @Getter
     @Setter
-    private String height;
+    private Double height;
 }
@@ -0,0 +1,54 @@
+package com.dataart.exercise.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Request to get a bird list filtered by the attributes of the birds. An empty condition matches any bird,
+ * the bounds of the ranges are inclusive
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ * @see com.dataart.exercise.entity.Bird
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+public class BirdsRequest {
+
+    /**
+     * Color of the birds, compared ignoring case
+     */
+    @Getter
+    @Setter
+    private String color;
+
+    /**
+     * Minimum weight in kilograms
+     */
+    @Getter
+    @Setter
+    private Double minWeight;
+
+    /**
+     * Maximum weight in kilograms
+     */
+    @Getter
+    @Setter
+    private Double maxWeight;
+
+    /**
+     * Minimum height in centimeters
+     */
+    @Getter
+    @Setter
+    private Double minHeight;
+
+    /**
+     * Maximum height in centimeters
+     */
+    @Getter
+    @Setter
+    private Double maxHeight;
+}
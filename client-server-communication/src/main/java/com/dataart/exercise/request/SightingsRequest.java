@@ -29,4 +29,11 @@ public class SightingsRequest {
     @Getter
     @Setter
     private LocalDate sightingDateEnd;
+
+    /**
+     * Optional location of the sightings. If empty then sightings at any location are returned
+     */
+    @Getter
+    @Setter
+    private String location;
 }
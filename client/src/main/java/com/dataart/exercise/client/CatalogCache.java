@@ -0,0 +1,125 @@
+package com.dataart.exercise.client;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.util.TypeUtils;
+import com.dataart.exercise.ResponseStatus;
+import com.dataart.exercise.dto.BirdsDelta;
+import com.dataart.exercise.dto.MessageDto;
+import com.dataart.exercise.entity.Bird;
+import lombok.Getter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local copy of the bird list of a server with the version of the server data it reflects.
+ * The client asks the server only for the changes since that version
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ * @see com.dataart.exercise.dto.BirdsDelta
+ */
+public class CatalogCache {
+
+    /**
+     * File of the cache
+     */
+    private final File file;
+    /**
+     * Version of the server data reflected by the cache, null if the cache is empty
+     */
+    @Getter
+    private Long version;
+    /**
+     * Cached birds by name
+     */
+    private final Map<String, Bird> birds = new HashMap<>();
+
+    /**
+     * Constructor for CatalogCache
+     *
+     * @param folderPath path to the folder of the cache files
+     * @param serverPort port of the server, every server has its own cache
+     */
+    public CatalogCache(String folderPath, int serverPort) {
+        this.file = new File(folderPath, "birds-" + serverPort + ".json");
+    }
+
+    /**
+     * Read the cache file. A missing or broken file leaves the cache empty
+     */
+    public void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try (FileInputStream is = new FileInputStream(file)) {
+            JSONObject cache = JSON.parseObject(is, JSONObject.class);
+            for (Bird bird : cache.getJSONArray("birds").toJavaList(Bird.class)) {
+                birds.put(bird.getName(), bird);
+            }
+            version = cache.getLong("version");
+        } catch (Exception e) {
+            System.err.println("Cache of the birds is ignored: " + e.getMessage());
+            birds.clear();
+            version = null;
+        }
+    }
+
+    /**
+     * Apply a bird list response to the cache and save the cache
+     *
+     * @param response full list, changes or NOT_MODIFIED response from the server
+     * @return List of all the cached birds
+     * @throws IOException if the cache cannot be saved
+     */
+    public List<Bird> apply(MessageDto response) throws IOException {
+        if (response.getStatus() == ResponseStatus.DELTA) {
+            BirdsDelta delta = TypeUtils.castToJavaBean(response.getObject(), BirdsDelta.class);
+            delta.getRemovedNames().forEach(birds::remove);
+            delta.getBirds().forEach(bird -> birds.put(bird.getName(), bird));
+        } else if (response.getStatus() != ResponseStatus.NOT_MODIFIED) {
+            birds.clear();
+            for (Object bird : (List<?>) response.getObject()) {
+                Bird cachedBird = TypeUtils.castToJavaBean(bird, Bird.class);
+                birds.put(cachedBird.getName(), cachedBird);
+            }
+        }
+        if (response.getVersion() != null && !response.getVersion().equals(version)) {
+            version = response.getVersion();
+            save();
+        }
+        return new ArrayList<>(birds.values());
+    }
+
+    /**
+     * Write the cache to a temporary file and replace the cache file with it
+     *
+     * @throws IOException if the cache cannot be written
+     */
+    private void save() throws IOException {
+        File folder = file.getParentFile();
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Cannot create directory " + folder.getAbsolutePath());
+        }
+        JSONObject cache = new JSONObject();
+        cache.put("version", version);
+        cache.put("birds", birds.values());
+        File temp = new File(folder, file.getName() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            JSON.writeJSONString(writer, cache);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -1,25 +1,41 @@
 package com.dataart.exercise.client;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.InetAddress;
+import java.net.ProtocolException;
 import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.TypeReference;
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.util.TypeUtils;
 import com.dataart.exercise.dto.MessageDto;
 import com.dataart.exercise.Action;
+import com.dataart.exercise.Compression;
+import com.dataart.exercise.MeasureUnit;
+import com.dataart.exercise.ResponseStatus;
 import com.dataart.exercise.entity.Bird;
 import com.dataart.exercise.entity.Sighting;
+import com.dataart.exercise.request.BirdsRequest;
 import com.dataart.exercise.request.SightingsRequest;
 
 /**
@@ -34,6 +50,14 @@ public class SocketClient {
      * A name of the server port parameter
      */
     private final String serverPortParameter = "-serverPort";
+    /**
+     * A name of the response compression parameter
+     */
+    private final String compressionParameter = "-compression";
+    /**
+     * A name of the cache folder parameter
+     */
+    private final String cacheFolderParameter = "-cacheFolder";
     /**
      * A minimum allowed value for the server port
      */
@@ -46,10 +70,26 @@ public class SocketClient {
      * The server port value. Initialized by default to 3000
      */
     private int serverPort = 3000;
+    /**
+     * The maximum number of attempts to send a request while the server is busy
+     */
+    private final int maxAttempts = 5;
+    /**
+     * Delay in milliseconds before the first retry, doubled for every next retry
+     */
+    private final long retryDelay = 200;
     /**
      * An action selected for execution on the server
      */
     private String action;
+    /**
+     * A compression of the response accepted by the client. Not set by default, so responses are never compressed
+     */
+    private Compression compression;
+    /**
+     * Location of the folder where the client caches the bird list. By default is <i>clientcache</i> in user's home directory
+     */
+    private String cacheFolder = System.getProperty("user.home") + File.separator + "clientcache";
 
     /**
      * Start of SocketClient
@@ -66,27 +106,131 @@ public class SocketClient {
             return;
         }
 
-        try (Socket s = new Socket(InetAddress.getLocalHost(), serverPort);
-                BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
-                BufferedReader is = new BufferedReader(new InputStreamReader(s.getInputStream()));
-                PrintWriter os = new PrintWriter(s.getOutputStream())) {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(System.in))) {
 
             MessageDto request = prepareRequest(br);
             if (request == null) {
                 return;
             }
-            os.println(JSON.toJSONString(request));
-            os.flush();
+            if (request.getAction() == Action.WATCH) {
+                watch(request);
+                return;
+            }
+            request.setCompression(compression);
+            CatalogCache catalogCache = null;
+            if (request.getAction() == Action.LIST_BIRDS && request.getObject() == null) {
+                catalogCache = new CatalogCache(cacheFolder, serverPort);
+                catalogCache.load();
+                request.setIfNewerThan(catalogCache.getVersion());
+            }
 
-            handleResponse(JSON.parseObject(is.readLine(), MessageDto.class));
+            MessageDto response = send(request);
+            long delay = retryDelay;
+            for (int attempt = 1; attempt < maxAttempts && response.getStatus() == ResponseStatus.BUSY; attempt++) {
+                System.err.println(response.getComment() + ". Retrying in " + delay + " ms");
+                Thread.sleep(delay);
+                delay *= 2;
+                response = send(request);
+            }
+            if (response.getStatus() == ResponseStatus.BUSY) {
+                System.err.println("ERROR: " + response.getComment());
+                return;
+            }
+            if (catalogCache != null && (response.getObject() != null || response.getStatus() == ResponseStatus.NOT_MODIFIED)) {
+                response.setObject(catalogCache.apply(response));
+            }
+            handleResponse(response);
         } catch (DateTimeParseException e) {
             System.err.println("ERROR: Date and/or time entered in a wrong format");
+        } catch (ProtocolException e) {
+            System.err.println("ERROR: " + e.getMessage());
         } catch (IOException e){
             e.printStackTrace();
             System.err.println("Socket read Error");
         }
     }
 
+    /**
+     * Send a request to the server in a new connection
+     *
+     * @param request request to the server
+     * @return MessageDto response from the server
+     * @throws IOException if there is an issue with the connection
+     */
+    private MessageDto send(MessageDto request) throws IOException {
+        try (Socket s = new Socket(InetAddress.getLocalHost(), serverPort);
+                BufferedReader is = new BufferedReader(new InputStreamReader(s.getInputStream()));
+                PrintWriter os = new PrintWriter(s.getOutputStream())) {
+            os.println(JSON.toJSONString(request));
+            os.flush();
+            if (request.getCompression() == null) {
+                return JSON.parseObject(is.readLine(), MessageDto.class);
+            }
+            return readCompressed(s.getInputStream());
+        }
+    }
+
+    /**
+     * Send a watch request and print the pushed sightings until the server closes the connection
+     *
+     * @param request watch request to the server
+     * @throws IOException if there is an issue with the connection
+     */
+    private void watch(MessageDto request) throws IOException {
+        try (Socket s = new Socket(InetAddress.getLocalHost(), serverPort);
+                BufferedReader is = new BufferedReader(new InputStreamReader(s.getInputStream()));
+                PrintWriter os = new PrintWriter(s.getOutputStream())) {
+            os.println(JSON.toJSONString(request));
+            os.flush();
+            String line;
+            while ((line = is.readLine()) != null) {
+                MessageDto message = JSON.parseObject(line, MessageDto.class);
+                if (message.getObject() == null) {
+                    System.err.println(message.getComment());
+                } else {
+                    Sighting sighting = JSON.parseObject(message.getObject().toString(), Sighting.class);
+                    System.out.println("| " + sighting.getBirdName() + " | " + sighting.getSightingDateTime().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")) + " | " + sighting.getLocation() + " |");
+                }
+            }
+            System.err.println("Watch ended: the server closed the connection");
+        } catch (SocketException e) {
+            // a client which does not keep up with the sightings is disconnected by a connection reset
+            System.err.println("Watch ended: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Read a response which starts with a header line naming the compression of the body. A connection
+     * rejected before the server read its request is answered with a plain line instead of the header
+     *
+     * @param is stream of the connection
+     * @return MessageDto response from the server
+     * @throws IOException if there is an issue with the connection
+     * @throws ProtocolException if the header line names no known compression
+     */
+    private MessageDto readCompressed(InputStream is) throws IOException {
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        for (int b = is.read(); b != '\n'; b = is.read()) {
+            if (b < 0) {
+                throw new IOException("Connection closed before the response header");
+            }
+            headerBytes.write(b);
+        }
+        String header = new String(headerBytes.toByteArray(), Charset.defaultCharset()).trim();
+        if (header.startsWith("{")) {
+            return JSON.parseObject(header, MessageDto.class);
+        }
+        Compression bodyCompression;
+        try {
+            bodyCompression = Compression.valueOf(header);
+        } catch (IllegalArgumentException e) {
+            throw new ProtocolException("Unexpected response header: " + (header.length() > 80 ? header.substring(0, 80) + "..." : header));
+        }
+        try (BufferedReader body = new BufferedReader(new InputStreamReader(bodyCompression.wrap(is), StandardCharsets.UTF_8))) {
+            return JSON.parseObject(body.readLine(), MessageDto.class);
+        }
+    }
+
     /**
      * Parsing of the command line arguments
      *
@@ -94,11 +238,23 @@ public class SocketClient {
      */
     private void parseCommandlineArgs(String[] commandlineArgs) {
         boolean isPortValueNext = false;
+        boolean isCompressionValueNext = false;
+        boolean isCacheFolderValueNext = false;
         for (String parameter : commandlineArgs) {
             if (actionFromParam(parameter) != null) {
                 action = parameter;
             } else if (serverPortParameter.equals(parameter)) {
                 isPortValueNext = true;
+            } else if (compressionParameter.equals(parameter)) {
+                isCompressionValueNext = true;
+            } else if (cacheFolderParameter.equals(parameter)) {
+                isCacheFolderValueNext = true;
+            } else if (isCacheFolderValueNext) {
+                cacheFolder = parameter;
+                isCacheFolderValueNext = false;
+            } else if (isCompressionValueNext) {
+                compression = Compression.valueOf(parameter.toUpperCase());
+                isCompressionValueNext = false;
             } else if (isPortValueNext) {
                 serverPort = Integer.parseInt(parameter);
                 if (serverPort < minServerPort || serverPort > maxServerPort) {
@@ -147,10 +303,15 @@ public class SocketClient {
                 bird.setName(value);
                 System.out.print("Please enter color of the bird and then press ENTER: ");
                 bird.setColor(br.readLine());
-                System.out.print("Please enter weight of the bird and then press ENTER: ");
-                bird.setWeight(br.readLine());
-                System.out.print("Please enter height of the bird and then press ENTER: ");
-                bird.setHeight(br.readLine());
+                try {
+                    System.out.print("Please enter weight of the bird (kg by default, g, lb and oz can be used) and then press ENTER: ");
+                    bird.setWeight(MeasureUnit.toKilograms(br.readLine()));
+                    System.out.print("Please enter height of the bird (cm by default, mm, m, in and ft can be used) and then press ENTER: ");
+                    bird.setHeight(MeasureUnit.toCentimeters(br.readLine()));
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e.getMessage());
+                    return null;
+                }
                 return new MessageDto(Action.ADD_BIRD, bird, null);
             case ADD_SIGHTING:
                 System.out.println("You selected an option to add information about a sighting.\n");
@@ -170,7 +331,28 @@ public class SocketClient {
                 return new MessageDto(Action.ADD_SIGHTING, sighting, null);
             case LIST_BIRDS:
                 System.out.println("You selected an option to see a list of the birds.\n");
-                return new MessageDto(Action.LIST_BIRDS, null);
+                BirdsRequest birdsRequest = new BirdsRequest();
+                System.out.print("Please enter color of the birds (leave empty for any color) and then press ENTER: ");
+                birdsRequest.setColor(br.readLine());
+                try {
+                    System.out.print("Please enter minimum weight (leave empty for no limit) and then press ENTER: ");
+                    birdsRequest.setMinWeight(MeasureUnit.toKilograms(br.readLine()));
+                    System.out.print("Please enter maximum weight (leave empty for no limit) and then press ENTER: ");
+                    birdsRequest.setMaxWeight(MeasureUnit.toKilograms(br.readLine()));
+                    System.out.print("Please enter minimum height (leave empty for no limit) and then press ENTER: ");
+                    birdsRequest.setMinHeight(MeasureUnit.toCentimeters(br.readLine()));
+                    System.out.print("Please enter maximum height (leave empty for no limit) and then press ENTER: ");
+                    birdsRequest.setMaxHeight(MeasureUnit.toCentimeters(br.readLine()));
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e.getMessage());
+                    return null;
+                }
+                if ((birdsRequest.getColor() == null || birdsRequest.getColor().trim().isEmpty()) && birdsRequest.getMinWeight() == null
+                        && birdsRequest.getMaxWeight() == null && birdsRequest.getMinHeight() == null && birdsRequest.getMaxHeight() == null) {
+                    // the whole list is kept in the local cache and only its changes are requested
+                    return new MessageDto(Action.LIST_BIRDS, null);
+                }
+                return new MessageDto(Action.LIST_BIRDS, birdsRequest);
             case LIST_SIGHTING:
                 System.out.println("You selected an option to see a list of the sightings.\n");
                 SightingsRequest sightingsRequest = new SightingsRequest();
@@ -186,6 +368,8 @@ public class SocketClient {
                 sightingsRequest.setSightingDateStart(LocalDate.parse(br.readLine(), pattern));
                 System.out.print("Please enter end date of a period you are looking for the sights (please use format yyyy-MM-dd) and then press ENTER: ");
                 sightingsRequest.setSightingDateEnd(LocalDate.parse(br.readLine(), pattern));
+                System.out.print("Please enter a location (leave empty for any location) and then press ENTER: ");
+                sightingsRequest.setLocation(br.readLine());
                 return new MessageDto(Action.LIST_SIGHTING, sightingsRequest);
             case REMOVE:
                 System.out.println("You selected an option to remove information about a bird.\n");
@@ -196,6 +380,18 @@ public class SocketClient {
                     return null;
                 }
                 return new MessageDto(Action.REMOVE, value);
+            case WATCH:
+                System.out.println("You selected an option to watch new sightings.\n");
+                System.out.print("Please enter name of the bird (regular expression pattern can be used) and then press ENTER: ");
+                value = br.readLine();
+                if (value.isEmpty()) {
+                    System.err.println("Name of a bird cannot be empty.");
+                    return null;
+                }
+                return new MessageDto(Action.WATCH, value);
+            case STATUS:
+                System.out.println("You selected an option to see a status of the server.\n");
+                return new MessageDto(Action.STATUS, null);
             case QUIT:
                 System.out.println("You selected an option to shutdown the server.\n");
                 return new MessageDto(Action.QUIT, null);
@@ -216,11 +412,15 @@ public class SocketClient {
                 System.out.println("\n" + messageDto.getComment());
                 break;
             case LIST_BIRDS:
+                if (messageDto.getObject() == null) {
+                    System.err.println(messageDto.getComment());
+                    break;
+                }
                 System.out.println("A list of the birds:\n");
-                System.out.println("| NAME | COLOR | WEIGHT | HEIGHT |");
-                List<JSONObject> birdListJson = (List<JSONObject>) messageDto.getObject();
+                System.out.println("| NAME | COLOR | WEIGHT, KG | HEIGHT, CM |");
+                List<?> birdListJson = (List<?>) messageDto.getObject();
                 List<Bird> birdList = birdListJson.stream()
-                        .map(o -> JSON.parseObject(o.toString(), Bird.class))
+                        .map(o -> TypeUtils.castToJavaBean(o, Bird.class))
                         .sorted(Comparator.comparing(Bird::getName))
                         .collect(Collectors.toList());
                 birdList.forEach(b -> System.out.println("| " + b.getName() + " | " + b.getColor() + " | " + b.getWeight() + " | " + b.getHeight() + " |"));
@@ -231,14 +431,20 @@ public class SocketClient {
                     System.err.println(messageDto.getComment());
                 } else {
                     System.out.println("A list of the sightings:\n");
-                    System.out.println("| BIRD NAME | DATE |");
+                    System.out.println("| BIRD NAME | DATE | LOCATION |");
                     List<JSONObject> sightingListJson = (List<JSONObject>) messageDto.getObject();
                     List<Sighting> sightingList = sightingListJson.stream()
                             .map(o -> JSON.parseObject(o.toString(), Sighting.class))
                             .sorted(Comparator.comparing(Sighting::getBirdName).thenComparing(Sighting::getSightingDateTime))
                             .collect(Collectors.toList());
-                    sightingList.forEach(s -> System.out.println("| " + s.getBirdName() + " | " + s.getSightingDateTime().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"))));
+                    sightingList.forEach(s -> System.out.println("| " + s.getBirdName() + " | " + s.getSightingDateTime().format(DateTimeFormatter.ofPattern("yyyy-MM-dd")) + " | " + s.getLocation() + " |"));
                 }
+                break;
+            case STATUS:
+                System.out.println("A status of the server:\n");
+                Map<String, Object> stats = TypeUtils.cast(messageDto.getObject(),
+                        new TypeReference<Map<String, Object>>() {}.getType(), ParserConfig.getGlobalInstance());
+                new TreeMap<>(stats).forEach((name, value) -> System.out.println(name + " = " + value));
         }
     }
 }
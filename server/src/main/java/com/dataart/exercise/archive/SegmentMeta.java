@@ -0,0 +1,28 @@
+package com.dataart.exercise.archive;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+/**
+ * Summary of a segment of the archived sightings, kept in memory to skip the segments which cannot match a query
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ */
+@Data
+@NoArgsConstructor
+public class SegmentMeta {
+
+    private String fileName;
+
+    private LocalDateTime minDateTime;
+
+    private LocalDateTime maxDateTime;
+
+    private Set<String> birdNames;
+
+    private int count;
+}
@@ -0,0 +1,461 @@
+package com.dataart.exercise.archive;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONReader;
+import com.alibaba.fastjson.JSONWriter;
+import com.dataart.exercise.entity.Sighting;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Store of the archived sightings on disk. The sightings are kept in immutable gzip compressed segment files
+ * partitioned by month, one segment per month: an archiving run merges the sightings of a month with its segment
+ * into a new segment which replaces the old one. Every segment has a summary file with its time range and bird
+ * names, the summaries are kept in memory, so a query reads only the segments which may contain matching sightings
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ * @see com.dataart.exercise.archive.SegmentMeta
+ */
+public class SegmentStore {
+
+    /**
+     * Suffix of a segment file
+     */
+    private static final String SEGMENT_SUFFIX = ".json.gz";
+    /**
+     * Suffix of a segment summary file
+     */
+    private static final String META_SUFFIX = ".meta.json";
+    /**
+     * Partition of a segment by the date of its sightings
+     */
+    private static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    /**
+     * Published state of the archive, replaced as a whole by every change
+     */
+    private static final class State {
+
+        /**
+         * Summaries of the segments
+         */
+        private final List<SegmentMeta> segments;
+        /**
+         * Sightings written to the segments by the last archiving run which may still be in memory
+         */
+        private final Set<Sighting> archiving;
+        /**
+         * Number of the changes of the archive
+         */
+        private final long generation;
+
+        /**
+         * Constructor for State
+         *
+         * @param segments summaries of the segments, not copied
+         * @param archiving sightings which may still be in memory, not copied
+         * @param generation number of the changes of the archive
+         */
+        State(List<SegmentMeta> segments, Set<Sighting> archiving, long generation) {
+            this.segments = segments;
+            this.archiving = archiving;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Folder of the segment files
+     */
+    private final File folder;
+    /**
+     * Current state of the archive
+     */
+    private volatile State state = new State(Collections.emptyList(), Collections.emptySet(), 0);
+
+    /**
+     * Constructor for SegmentStore
+     *
+     * @param folderPath path to the folder of the segment files
+     */
+    public SegmentStore(String folderPath) {
+        this.folder = new File(folderPath);
+    }
+
+    /**
+     * Create the folder if no exists and read the summaries of the segments.
+     * A segment without a summary was not completely written and is ignored. Several segments of one month
+     * are left by a crash while they were merged, or by an older version of the server, and are merged again
+     *
+     * @throws IOException if the folder cannot be created or read
+     */
+    public synchronized void open() throws IOException {
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Cannot create directory " + folder.getAbsolutePath());
+        }
+        File[] metaFiles = folder.listFiles((dir, name) -> name.endsWith(META_SUFFIX));
+        if (metaFiles == null) {
+            throw new IOException("Cannot read directory " + folder.getAbsolutePath());
+        }
+        List<SegmentMeta> segments = new ArrayList<>();
+        for (File metaFile : metaFiles) {
+            try (FileInputStream is = new FileInputStream(metaFile)) {
+                segments.add(JSON.parseObject(is, SegmentMeta.class));
+            }
+        }
+        publish(Collections.emptyList(), segments, Collections.emptySet());
+        Map<String, List<SegmentMeta>> months = new TreeMap<>();
+        for (SegmentMeta segment : segments) {
+            months.computeIfAbsent(monthOf(segment), k -> new ArrayList<>()).add(segment);
+        }
+        List<SegmentMeta> replaced = new ArrayList<>();
+        List<SegmentMeta> written = new ArrayList<>();
+        for (Map.Entry<String, List<SegmentMeta>> month : months.entrySet()) {
+            if (month.getValue().size() > 1) {
+                written.add(merge(month.getKey(), month.getValue(), Collections.emptyList()));
+                replaced.addAll(month.getValue());
+            }
+        }
+        if (!replaced.isEmpty()) {
+            publish(replaced, written, Collections.emptySet());
+        }
+    }
+
+    /**
+     * Merge the sightings into the segments of their months. The sightings stay marked as archiving
+     * until {@link #archivingCompleted()}, so a query which reads them from the segments skips them in memory
+     *
+     * @param sightings sightings to archive
+     * @throws IOException if a segment cannot be written
+     */
+    public synchronized void archive(Collection<Sighting> sightings) throws IOException {
+        Map<String, List<Sighting>> partitions = new TreeMap<>();
+        for (Sighting sighting : sightings) {
+            partitions.computeIfAbsent(sighting.getSightingDateTime().format(PARTITION_FORMAT), k -> new ArrayList<>()).add(sighting);
+        }
+        List<SegmentMeta> replaced = new ArrayList<>();
+        List<SegmentMeta> written = new ArrayList<>();
+        for (Map.Entry<String, List<Sighting>> partition : partitions.entrySet()) {
+            List<SegmentMeta> monthSegments = new ArrayList<>();
+            for (SegmentMeta segment : state.segments) {
+                if (partition.getKey().equals(monthOf(segment))) {
+                    monthSegments.add(segment);
+                }
+            }
+            written.add(merge(partition.getKey(), monthSegments, partition.getValue()));
+            replaced.addAll(monthSegments);
+        }
+        publish(replaced, written, new HashSet<>(sightings));
+    }
+
+    /**
+     * Mark the sightings of the last archiving run as removed from memory
+     */
+    public synchronized void archivingCompleted() {
+        State current = state;
+        state = new State(current.segments, Collections.emptySet(), current.generation + 1);
+    }
+
+    /**
+     * Sightings written to the segments by the last archiving run which may still be in memory. A query skips
+     * them in memory and finds them in the archive. The set is consistent with the segments read by
+     * {@link #find} while the number of the changes is the same
+     *
+     * @return Set of the sightings, empty if no run is in progress
+     */
+    public Set<Sighting> getArchiving() {
+        return state.archiving;
+    }
+
+    /**
+     * Read the archived sightings which may satisfy a query. If a segment was replaced while the query
+     * read the archive, the query is repeated on the new segments
+     *
+     * @param birdNameFilter condition on the bird name, checked against the summaries and the sightings
+     * @param from beginning of the period
+     * @param to end of the period
+     * @param filter condition on a sighting
+     * @return List of the matching sightings
+     * @throws IOException if a segment cannot be read
+     */
+    public List<Sighting> find(Predicate<String> birdNameFilter, LocalDateTime from, LocalDateTime to,
+                               Predicate<Sighting> filter) throws IOException {
+        while (true) {
+            State current = state;
+            List<Sighting> result = new ArrayList<>();
+            try {
+                for (SegmentMeta segment : current.segments) {
+                    if (segment.getMaxDateTime().isBefore(from) || segment.getMinDateTime().isAfter(to)
+                            || segment.getBirdNames().stream().noneMatch(birdNameFilter)) {
+                        continue;
+                    }
+                    readSegment(segment.getFileName(), sighting -> {
+                        if (birdNameFilter.test(sighting.getBirdName()) && filter.test(sighting)) {
+                            result.add(sighting);
+                        }
+                    });
+                }
+                return result;
+            } catch (FileNotFoundException e) {
+                // the segment was deleted after it was replaced by a newer one
+                if (state == current) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if a sighting is archived
+     *
+     * @param sighting sighting to look for
+     * @return TRUE if an archived sighting has the same parameters
+     * @throws IOException if a segment cannot be read
+     */
+    public boolean contains(Sighting sighting) throws IOException {
+        return !find(sighting.getBirdName()::equals, sighting.getSightingDateTime(), sighting.getSightingDateTime(),
+                sighting::equals).isEmpty();
+    }
+
+    /**
+     * Condition which is TRUE for an archived sighting, to skip the sightings of the data store which are already
+     * archived. They are left there by a crash after the segments were written but before the data store was saved.
+     * A segment is read only if a checked sighting may be in it, and only once. The condition is used by one thread
+     *
+     * @return Predicate on a sighting which throws UncheckedIOException if a segment cannot be read
+     */
+    public Predicate<Sighting> archivedFilter() {
+        Map<String, Set<Sighting>> segmentContents = new HashMap<>();
+        return sighting -> {
+            for (SegmentMeta segment : state.segments) {
+                if (sighting.getSightingDateTime().isBefore(segment.getMinDateTime())
+                        || sighting.getSightingDateTime().isAfter(segment.getMaxDateTime())
+                        || !segment.getBirdNames().contains(sighting.getBirdName())) {
+                    continue;
+                }
+                Set<Sighting> content = segmentContents.get(segment.getFileName());
+                if (content == null) {
+                    content = new HashSet<>();
+                    try {
+                        readSegment(segment.getFileName(), content::add);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    segmentContents.put(segment.getFileName(), content);
+                }
+                if (content.contains(sighting)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    /**
+     * Number of the changes of the archive. A sighting not found in the archive is still not archived
+     * while the number is the same
+     *
+     * @return number of the changes
+     */
+    public long getGeneration() {
+        return state.generation;
+    }
+
+    /**
+     * Remove the sightings of a bird. Every segment with the bird is replaced by a segment without it
+     *
+     * @param birdName name of the bird
+     * @return TRUE if any sighting was removed
+     * @throws IOException if a segment cannot be rewritten
+     */
+    public synchronized boolean removeBird(String birdName) throws IOException {
+        List<SegmentMeta> replaced = new ArrayList<>();
+        List<SegmentMeta> written = new ArrayList<>();
+        for (SegmentMeta segment : state.segments) {
+            if (!segment.getBirdNames().contains(birdName)) {
+                continue;
+            }
+            List<Sighting> remaining = new ArrayList<>();
+            readSegment(segment.getFileName(), sighting -> {
+                if (!birdName.equals(sighting.getBirdName())) {
+                    remaining.add(sighting);
+                }
+            });
+            if (!remaining.isEmpty()) {
+                written.add(writeSegment(newBaseName(monthOf(segment)), remaining));
+            }
+            replaced.add(segment);
+        }
+        if (replaced.isEmpty()) {
+            return false;
+        }
+        publish(replaced, written, state.archiving);
+        return true;
+    }
+
+    /**
+     * Put statistics of the archive to a map
+     *
+     * @param stats map of the statistics
+     */
+    public void collectStats(Map<String, Object> stats) {
+        List<SegmentMeta> segments = state.segments;
+        stats.put("archive.segments", segments.size());
+        stats.put("archive.sightings", segments.stream().mapToLong(SegmentMeta::getCount).sum());
+    }
+
+    /**
+     * Write a segment with the sightings of a month merged with its segments. A sighting which is already
+     * in the segments is written once, so merging is repeated safely after a crash
+     *
+     * @param month partition of the segments
+     * @param segments segments of the month
+     * @param sightings sightings to add
+     * @return SegmentMeta summary of the written segment
+     * @throws IOException if a segment cannot be read or written
+     */
+    private SegmentMeta merge(String month, List<SegmentMeta> segments, List<Sighting> sightings) throws IOException {
+        Set<Sighting> merged = new LinkedHashSet<>();
+        for (SegmentMeta segment : segments) {
+            readSegment(segment.getFileName(), merged::add);
+        }
+        merged.addAll(sightings);
+        return writeSegment(newBaseName(month), merged);
+    }
+
+    /**
+     * Replace segments by the new ones and publish the new state, then delete the files of the replaced segments.
+     * A query which still reads a deleted segment is repeated on the new state
+     *
+     * @param replaced summaries of the replaced segments
+     * @param written summaries of the new segments
+     * @param archiving sightings which may still be in memory
+     * @throws IOException if a replaced segment cannot be deleted
+     */
+    private void publish(List<SegmentMeta> replaced, List<SegmentMeta> written, Set<Sighting> archiving) throws IOException {
+        State current = state;
+        List<SegmentMeta> segments = new ArrayList<>(current.segments);
+        segments.removeAll(replaced);
+        segments.addAll(written);
+        state = new State(Collections.unmodifiableList(segments), archiving, current.generation + 1);
+        for (SegmentMeta segment : replaced) {
+            String baseName = segment.getFileName().substring(0, segment.getFileName().length() - SEGMENT_SUFFIX.length());
+            Files.deleteIfExists(new File(folder, baseName + META_SUFFIX).toPath());
+            Files.deleteIfExists(new File(folder, segment.getFileName()).toPath());
+        }
+    }
+
+    /**
+     * Name for a new segment of a month which is not used by any segment
+     *
+     * @param month partition of the segment
+     * @return name of the segment without a suffix
+     */
+    private String newBaseName(String month) {
+        long createdAt = System.currentTimeMillis();
+        while (new File(folder, "segment-" + month + "-" + createdAt + SEGMENT_SUFFIX).exists()) {
+            createdAt++;
+        }
+        return "segment-" + month + "-" + createdAt;
+    }
+
+    /**
+     * Partition of a segment, all its sightings are of one month
+     *
+     * @param segment summary of the segment
+     * @return month of the segment
+     */
+    private static String monthOf(SegmentMeta segment) {
+        return segment.getMinDateTime().format(PARTITION_FORMAT);
+    }
+
+    /**
+     * Write a segment and its summary. Both files are written under temporary names and then renamed,
+     * so a reader never sees a partially written segment. The segment is not published
+     *
+     * @param baseName name of the segment without a suffix
+     * @param sightings sightings of the segment
+     * @return SegmentMeta summary of the segment
+     * @throws IOException if the segment cannot be written
+     */
+    private SegmentMeta writeSegment(String baseName, Collection<Sighting> sightings) throws IOException {
+        SegmentMeta segment = new SegmentMeta();
+        segment.setFileName(baseName + SEGMENT_SUFFIX);
+        segment.setBirdNames(new TreeSet<>());
+        segment.setCount(sightings.size());
+        for (Sighting sighting : sightings) {
+            segment.getBirdNames().add(sighting.getBirdName());
+            if (segment.getMinDateTime() == null || sighting.getSightingDateTime().isBefore(segment.getMinDateTime())) {
+                segment.setMinDateTime(sighting.getSightingDateTime());
+            }
+            if (segment.getMaxDateTime() == null || sighting.getSightingDateTime().isAfter(segment.getMaxDateTime())) {
+                segment.setMaxDateTime(sighting.getSightingDateTime());
+            }
+        }
+        File segmentFile = new File(folder, segment.getFileName());
+        File segmentTemp = new File(folder, segment.getFileName() + ".tmp");
+        // closing of JSONWriter does not close the underlying stream, so the gzip trailer is written by the outer resource
+        try (Writer os = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(segmentTemp)), StandardCharsets.UTF_8);
+             JSONWriter writer = new JSONWriter(os)) {
+            writer.startArray();
+            for (Sighting sighting : sightings) {
+                writer.writeValue(sighting);
+            }
+            writer.endArray();
+        }
+        Files.move(segmentTemp.toPath(), segmentFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        File metaFile = new File(folder, baseName + META_SUFFIX);
+        File metaTemp = new File(folder, baseName + META_SUFFIX + ".tmp");
+        try (Writer metaWriter = new OutputStreamWriter(new FileOutputStream(metaTemp), StandardCharsets.UTF_8)) {
+            JSON.writeJSONString(metaWriter, segment);
+        }
+        Files.move(metaTemp.toPath(), metaFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return segment;
+    }
+
+    /**
+     * Read the sightings of a segment one by one
+     *
+     * @param fileName name of the segment file
+     * @param consumer receives every sighting
+     * @throws IOException if the segment cannot be read
+     */
+    private void readSegment(String fileName, Consumer<Sighting> consumer) throws IOException {
+        try (JSONReader reader = new JSONReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(new File(folder, fileName))), StandardCharsets.UTF_8))) {
+            reader.startArray();
+            while (reader.hasNext()) {
+                consumer.accept(reader.readObject(Sighting.class));
+            }
+            reader.endArray();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.dataart.exercise.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of the reading of a part of the data store from a file
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ */
+@Name("com.dataart.exercise.DataLoad")
+@Label("Data Load")
+@Category({"Bird Server", "Persistence"})
+@Description("Reading of a part of the data store from a file")
+public class DataLoadEvent extends Event {
+
+    @Label("File")
+    public String filePath;
+
+    @Label("Element Count")
+    public int elementCount;
+
+    @Label("File Size")
+    @DataAmount
+    public long fileSize;
+}
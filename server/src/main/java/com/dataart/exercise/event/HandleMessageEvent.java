@@ -0,0 +1,31 @@
+package com.dataart.exercise.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of the execution of a request by a server worker, including the waiting for the data loading
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ */
+@Name("com.dataart.exercise.HandleMessage")
+@Label("Handle Message")
+@Category({"Bird Server", "Request"})
+@Description("Execution of a request by a server worker, including the waiting for the data loading")
+public class HandleMessageEvent extends Event {
+
+    @Label("Action")
+    public String action;
+
+    @Label("Result Count")
+    @Description("Number of the returned birds or sightings")
+    public int resultCount;
+
+    @Label("Comment")
+    @Description("Comment of the response, such as a failure reason")
+    public String comment;
+}
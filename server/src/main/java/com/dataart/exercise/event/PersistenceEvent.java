@@ -0,0 +1,31 @@
+package com.dataart.exercise.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of the saving of a part of the data store to a file
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ */
+@Name("com.dataart.exercise.Persistence")
+@Label("Persistence")
+@Category({"Bird Server", "Persistence"})
+@Description("Saving of a part of the data store to a file")
+public class PersistenceEvent extends Event {
+
+    @Label("File")
+    public String filePath;
+
+    @Label("Entry Count")
+    public int entryCount;
+
+    @Label("File Size")
+    @DataAmount
+    public long fileSize;
+}
@@ -0,0 +1,28 @@
+package com.dataart.exercise.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of the decoding of a request line from JSON
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ */
+@Name("com.dataart.exercise.RequestParse")
+@Label("Request Parse")
+@Category({"Bird Server", "Request"})
+@Description("Decoding of a request line from JSON")
+public class RequestParseEvent extends Event {
+
+    @Label("Action")
+    public String action;
+
+    @Label("Request Size")
+    @DataAmount
+    public int bytes;
+}
@@ -0,0 +1,25 @@
+package com.dataart.exercise.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of the reading of a request line from a client socket
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ */
+@Name("com.dataart.exercise.RequestRead")
+@Label("Request Read")
+@Category({"Bird Server", "Request"})
+@Description("Reading of a request line from a client socket")
+public class RequestReadEvent extends Event {
+
+    @Label("Request Size")
+    @DataAmount
+    public int bytes;
+}
@@ -0,0 +1,32 @@
+package com.dataart.exercise.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of the encoding of a response and writing it to a client socket
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ */
+@Name("com.dataart.exercise.ResponseWrite")
+@Label("Response Write")
+@Category({"Bird Server", "Request"})
+@Description("Encoding of a response and writing it to a client socket")
+public class ResponseWriteEvent extends Event {
+
+    @Label("Action")
+    public String action;
+
+    @Label("Compression")
+    public String compression;
+
+    @Label("Response Size")
+    @Description("Number of the bytes sent to the client")
+    @DataAmount
+    public long bytes;
+}
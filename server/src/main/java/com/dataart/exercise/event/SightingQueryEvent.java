@@ -0,0 +1,37 @@
+package com.dataart.exercise.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of the search of the sightings for a LIST_SIGHTING request
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ */
+@Name("com.dataart.exercise.SightingQuery")
+@Label("Sighting Query")
+@Category({"Bird Server", "Request"})
+@Description("Search of the sightings for a LIST_SIGHTING request")
+public class SightingQueryEvent extends Event {
+
+    @Label("Bird Name Pattern")
+    public String birdNamePattern;
+
+    @Label("Location")
+    public String location;
+
+    @Label("Matched Birds")
+    @Description("Number of the birds found by the name pattern, 0 for a location query")
+    public int matchedBirds;
+
+    @Label("Result Count")
+    public int resultCount;
+
+    @Label("Archived Count")
+    @Description("Number of the results read from the archive")
+    public int archivedCount;
+}
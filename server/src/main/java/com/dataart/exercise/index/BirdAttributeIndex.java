@@ -0,0 +1,188 @@
+package com.dataart.exercise.index;
+
+import com.dataart.exercise.entity.Bird;
+import com.dataart.exercise.request.BirdsRequest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Sorted secondary indexes of the birds by weight, by height and by color with weight. A filtered bird list
+ * is read from the index of the most selective condition as a range, and only the birds in that range are checked
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ * @see com.dataart.exercise.request.BirdsRequest
+ */
+public class BirdAttributeIndex {
+
+    /**
+     * Order of the index by weight: by weight, then by name
+     */
+    private static final Comparator<Entry> WEIGHT_ORDER = Comparator
+            .comparing((Entry entry) -> entry.weight, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(entry -> entry.name, Comparator.nullsFirst(Comparator.naturalOrder()));
+    /**
+     * Order of the index by height: by height, then by name
+     */
+    private static final Comparator<Entry> HEIGHT_ORDER = Comparator
+            .comparing((Entry entry) -> entry.height, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(entry -> entry.name, Comparator.nullsFirst(Comparator.naturalOrder()));
+    /**
+     * Order of the index by color: by normalized color, then by weight and name
+     */
+    private static final Comparator<Entry> COLOR_ORDER = Comparator
+            .comparing((Entry entry) -> entry.color, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(WEIGHT_ORDER);
+
+    /**
+     * Indexed attributes of a bird
+     */
+    private static final class Entry {
+        private final String name;
+        private final String color;
+        private final Double weight;
+        private final Double height;
+        private final Bird bird;
+
+        private Entry(String name, String color, Double weight, Double height, Bird bird) {
+            this.name = name;
+            this.color = color;
+            this.weight = weight;
+            this.height = height;
+            this.bird = bird;
+        }
+    }
+
+    /**
+     * Entries by bird name
+     */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    /**
+     * Entries ordered by weight
+     */
+    private final NavigableSet<Entry> byWeight = new ConcurrentSkipListSet<>(WEIGHT_ORDER);
+    /**
+     * Entries ordered by height
+     */
+    private final NavigableSet<Entry> byHeight = new ConcurrentSkipListSet<>(HEIGHT_ORDER);
+    /**
+     * Entries ordered by color and weight
+     */
+    private final NavigableSet<Entry> byColor = new ConcurrentSkipListSet<>(COLOR_ORDER);
+
+    /**
+     * Add a bird to the index or replace a bird with the same name
+     *
+     * @param bird bird to add
+     */
+    public synchronized void add(Bird bird) {
+        Entry entry = new Entry(bird.getName(), normalize(bird.getColor()), bird.getWeight(), bird.getHeight(), bird);
+        Entry previous = entries.put(bird.getName(), entry);
+        if (previous != null) {
+            removeEntry(previous);
+        }
+        byWeight.add(entry);
+        byHeight.add(entry);
+        byColor.add(entry);
+    }
+
+    /**
+     * Remove a bird from the index
+     *
+     * @param birdName name of the bird
+     */
+    public synchronized void remove(String birdName) {
+        Entry entry = entries.remove(birdName);
+        if (entry != null) {
+            removeEntry(entry);
+        }
+    }
+
+    /**
+     * Find the birds which satisfy a request. A color condition is read from the index by color with the weight
+     * range, otherwise a weight or a height range is read from its index, so only the birds within the chosen
+     * range are checked against the other conditions
+     *
+     * @param request conditions on the birds
+     * @return List of the matching birds
+     */
+    public List<Bird> find(BirdsRequest request) {
+        String color = normalize(request.getColor());
+        boolean hasWeightRange = request.getMinWeight() != null || request.getMaxWeight() != null;
+        boolean hasHeightRange = request.getMinHeight() != null || request.getMaxHeight() != null;
+        double minWeight = request.getMinWeight() != null ? request.getMinWeight() : Double.NEGATIVE_INFINITY;
+        double maxWeight = request.getMaxWeight() != null ? request.getMaxWeight() : Double.POSITIVE_INFINITY;
+        double minHeight = request.getMinHeight() != null ? request.getMinHeight() : Double.NEGATIVE_INFINITY;
+        double maxHeight = request.getMaxHeight() != null ? request.getMaxHeight() : Double.POSITIVE_INFINITY;
+        List<Bird> result = new ArrayList<>();
+        if (minWeight > maxWeight || minHeight > maxHeight) {
+            return result;
+        }
+        Collection<Entry> range;
+        if (color != null && hasWeightRange) {
+            range = byColor.subSet(probe(color, minWeight, null), true, probe(color, Math.nextUp(maxWeight), null), false);
+        } else if (color != null) {
+            // the smallest color after the requested one bounds all its birds, including those without a weight
+            range = byColor.subSet(probe(color, null, null), true, probe(color + '\0', null, null), false);
+        } else if (hasWeightRange) {
+            range = byWeight.subSet(probe(null, minWeight, null), true, probe(null, Math.nextUp(maxWeight), null), false);
+        } else if (hasHeightRange) {
+            range = byHeight.subSet(probe(null, null, minHeight), true, probe(null, null, Math.nextUp(maxHeight)), false);
+        } else {
+            range = byWeight;
+        }
+        for (Entry entry : range) {
+            if ((color == null || color.equals(entry.color))
+                    && (!hasWeightRange || entry.weight != null && entry.weight >= minWeight && entry.weight <= maxWeight)
+                    && (!hasHeightRange || entry.height != null && entry.height >= minHeight && entry.height <= maxHeight)) {
+                result.add(entry.bird);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Normalize a color: trim, lower case. Returns null for an empty color
+     *
+     * @param color raw color
+     * @return normalized color or null
+     */
+    public static String normalize(String color) {
+        if (color == null) {
+            return null;
+        }
+        String normalized = color.trim().toLowerCase(Locale.ROOT);
+        return normalized.isEmpty() ? null : normalized;
+    }
+
+    /**
+     * Entry to search the indexes, ordered before all the birds with the same attributes
+     *
+     * @param color normalized color
+     * @param weight weight
+     * @param height height
+     * @return Entry without a name
+     */
+    private static Entry probe(String color, Double weight, Double height) {
+        return new Entry(null, color, weight, height, null);
+    }
+
+    /**
+     * Remove an entry from the ordered indexes
+     *
+     * @param entry entry to remove
+     */
+    private void removeEntry(Entry entry) {
+        byWeight.remove(entry);
+        byHeight.remove(entry);
+        byColor.remove(entry);
+    }
+}
@@ -0,0 +1,320 @@
+package com.dataart.exercise.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Trigram index over the bird names. A regular expression is narrowed to the names which contain
+ * all the literal fragments required by the expression, and only these names are matched against it
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ */
+public class BirdNameIndex {
+
+    /**
+     * Length of a gram
+     */
+    private static final int GRAM_LENGTH = 3;
+
+    /**
+     * All the indexed names
+     */
+    private final Set<String> names = ConcurrentHashMap.newKeySet();
+    /**
+     * Names by trigram
+     */
+    private final Map<String, Set<String>> postings = new ConcurrentHashMap<>();
+
+    /**
+     * Add a name to the index
+     *
+     * @param name bird name
+     */
+    public void add(String name) {
+        if (name == null || !names.add(name)) {
+            return;
+        }
+        for (String gram : grams(name)) {
+            postings.computeIfAbsent(gram, k -> ConcurrentHashMap.newKeySet()).add(name);
+        }
+    }
+
+    /**
+     * Add all the names to the index
+     *
+     * @param names bird names
+     */
+    public void addAll(Collection<String> names) {
+        names.forEach(this::add);
+    }
+
+    /**
+     * Remove a name from the index. An empty posting list is dropped
+     *
+     * @param name bird name
+     */
+    public void remove(String name) {
+        if (name == null || !names.remove(name)) {
+            return;
+        }
+        for (String gram : grams(name)) {
+            postings.computeIfPresent(gram, (k, postingList) -> {
+                postingList.remove(name);
+                return postingList.isEmpty() ? null : postingList;
+            });
+        }
+    }
+
+    /**
+     * Names which fully match a pattern
+     *
+     * @param pattern compiled bird name pattern
+     * @return List of the matching names
+     */
+    public List<String> find(Pattern pattern) {
+        return candidates(pattern.pattern()).stream()
+                .filter(name -> pattern.matcher(name).matches())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Names which contain every literal fragment required by a regular expression.
+     * If no fragment is long enough to be looked up then all the names are returned
+     *
+     * @param regex regular expression
+     * @return Collection of the candidate names
+     */
+    private Collection<String> candidates(String regex) {
+        List<String> literals = requiredLiterals(regex);
+        if (literals == null) {
+            return names;
+        }
+        Set<String> grams = new HashSet<>();
+        literals.forEach(literal -> grams.addAll(grams(literal)));
+        if (grams.isEmpty()) {
+            return names;
+        }
+        List<Set<String>> postingLists = new ArrayList<>();
+        for (String gram : grams) {
+            Set<String> postingList = postings.get(gram);
+            if (postingList == null) {
+                return Collections.emptyList();
+            }
+            postingLists.add(postingList);
+        }
+        postingLists.sort(Comparator.comparingInt(Set::size));
+        Set<String> smallest = postingLists.get(0);
+        List<Set<String>> others = postingLists.subList(1, postingLists.size());
+        return smallest.stream()
+                .filter(name -> others.stream().allMatch(postingList -> postingList.contains(name)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Trigrams of a string. The case is lowered char by char, so the trigrams of a substring are always
+     * a subset of the trigrams of the whole string and case insensitive patterns are still narrowed correctly
+     *
+     * @param value string to split
+     * @return Set of the trigrams, empty if the string is shorter than a trigram
+     */
+    private static Set<String> grams(String value) {
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= chars.length; i++) {
+            grams.add(new String(chars, i, GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    /**
+     * Literal fragments which every string matching a regular expression must contain.
+     * Only the top level of the expression is analyzed: groups, classes, escapes with a special meaning
+     * and optional characters break a fragment, and a top level alternation disables narrowing completely
+     *
+     * @param regex valid regular expression
+     * @return List of the fragments or null if the expression cannot be narrowed
+     */
+    static List<String> requiredLiterals(String regex) {
+        List<String> literals = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            switch (c) {
+                case '\\':
+                    char next = i + 1 < regex.length() ? regex.charAt(i + 1) : '\\';
+                    if (next == 'Q') {
+                        int end = regex.indexOf("\\E", i + 2);
+                        String quoted = end < 0 ? regex.substring(i + 2) : regex.substring(i + 2, end);
+                        if (depth == 0) {
+                            run.append(quoted);
+                        }
+                        i = end < 0 ? regex.length() : end + 2;
+                    } else if (Character.isLetterOrDigit(next)) {
+                        flush(run, literals);
+                        i = skipEscape(regex, i + 1);
+                    } else {
+                        if (depth == 0) {
+                            run.append(next);
+                        }
+                        i += 2;
+                    }
+                    break;
+                case '[':
+                    flush(run, literals);
+                    i = skipClass(regex, i);
+                    break;
+                case '(':
+                    flush(run, literals);
+                    if (hasUnsupportedFlags(regex, i)) {
+                        return null;
+                    }
+                    depth++;
+                    i++;
+                    break;
+                case ')':
+                    flush(run, literals);
+                    depth--;
+                    i++;
+                    break;
+                case '|':
+                    if (depth == 0) {
+                        return null;
+                    }
+                    i++;
+                    break;
+                case '*':
+                case '?':
+                case '{':
+                    // the previous character is optional
+                    if (run.length() > 0) {
+                        run.setLength(run.length() - 1);
+                    }
+                    flush(run, literals);
+                    i = c == '{' ? Math.max(regex.indexOf('}', i), i) + 1 : i + 1;
+                    break;
+                case '+':
+                case '.':
+                case '^':
+                case '$':
+                    flush(run, literals);
+                    i++;
+                    break;
+                default:
+                    if (depth == 0) {
+                        run.append(c);
+                    }
+                    i++;
+            }
+        }
+        flush(run, literals);
+        return literals;
+    }
+
+    /**
+     * Move a collected fragment to the list of the fragments
+     *
+     * @param run collected fragment
+     * @param literals list of the fragments
+     */
+    private static void flush(StringBuilder run, List<String> literals) {
+        if (run.length() > 0) {
+            literals.add(run.toString());
+            run.setLength(0);
+        }
+    }
+
+    /**
+     * Skip an escape which has a special meaning, e.g. <i>\d</i>, <i>\x41</i> or <i>\p{Alpha}</i>
+     *
+     * @param regex regular expression
+     * @param i position of the character after the backslash
+     * @return position after the escape
+     */
+    private static int skipEscape(String regex, int i) {
+        char c = regex.charAt(i++);
+        if (i < regex.length() && (regex.charAt(i) == '{' || regex.charAt(i) == '<')) {
+            int end = regex.indexOf(regex.charAt(i) == '{' ? '}' : '>', i);
+            return end < 0 ? regex.length() : end + 1;
+        }
+        int digits = c == 'x' ? 2 : c == 'u' ? 4 : c == 'c' || c == 'p' || c == 'P' ? 1 : 0;
+        if (c == '0' || Character.isDigit(c)) {
+            while (i < regex.length() && Character.isDigit(regex.charAt(i))) {
+                i++;
+            }
+        }
+        return Math.min(i + digits, regex.length());
+    }
+
+    /**
+     * Skip a character class, including nested classes
+     *
+     * @param regex regular expression
+     * @param i position of the opening bracket
+     * @return position after the closing bracket
+     */
+    private static int skipClass(String regex, int i) {
+        int nesting = 0;
+        i++;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                nesting++;
+            } else if (c == ']') {
+                if (nesting == 0) {
+                    return i + 1;
+                }
+                nesting--;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Check if a group sets the comments or the unicode case flag which change how literals are matched
+     *
+     * @param regex regular expression
+     * @param i position of the opening parenthesis
+     * @return TRUE if the expression should not be narrowed
+     */
+    private static boolean hasUnsupportedFlags(String regex, int i) {
+        if (i + 1 >= regex.length() || regex.charAt(i + 1) != '?') {
+            return false;
+        }
+        for (int j = i + 2; j < regex.length(); j++) {
+            char c = regex.charAt(j);
+            if (c == 'x' || c == 'u') {
+                return true;
+            }
+            if (!Character.isLetter(c) && c != '-') {
+                return false;
+            }
+        }
+        return false;
+    }
+}
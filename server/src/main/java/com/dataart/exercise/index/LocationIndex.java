@@ -0,0 +1,124 @@
+package com.dataart.exercise.index;
+
+import com.dataart.exercise.entity.Sighting;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Inverted index from a normalized location to a time-ordered posting list of the sightings
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ * @see com.dataart.exercise.entity.Sighting
+ */
+public class LocationIndex {
+
+    /**
+     * Order of the sightings inside a posting list: by date and time, then by bird name and location
+     */
+    private static final Comparator<Sighting> POSTING_ORDER = Comparator
+            .comparing(Sighting::getSightingDateTime, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(Sighting::getBirdName, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(Sighting::getLocation, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    /**
+     * Posting lists by normalized location
+     */
+    private final Map<String, NavigableSet<Sighting>> postings = new ConcurrentHashMap<>();
+
+    /**
+     * Add a sighting to the index. Sightings without a location or a date are not indexed
+     *
+     * @param sighting sighting to add
+     */
+    public void add(Sighting sighting) {
+        String key = normalize(sighting.getLocation());
+        if (key == null || sighting.getSightingDateTime() == null) {
+            return;
+        }
+        postings.compute(key, (k, postingList) -> {
+            if (postingList == null) {
+                postingList = new ConcurrentSkipListSet<>(POSTING_ORDER);
+            }
+            postingList.add(sighting);
+            return postingList;
+        });
+    }
+
+    /**
+     * Add all the sightings to the index
+     *
+     * @param sightings sightings to add
+     */
+    public void addAll(Collection<Sighting> sightings) {
+        sightings.forEach(this::add);
+    }
+
+    /**
+     * Remove a sighting from the index. An empty posting list is dropped
+     *
+     * @param sighting sighting to remove
+     */
+    public void remove(Sighting sighting) {
+        String key = normalize(sighting.getLocation());
+        if (key == null || sighting.getSightingDateTime() == null) {
+            return;
+        }
+        postings.computeIfPresent(key, (k, postingList) -> {
+            postingList.remove(sighting);
+            return postingList.isEmpty() ? null : postingList;
+        });
+    }
+
+    /**
+     * Remove all the sightings from the index
+     *
+     * @param sightings sightings to remove
+     */
+    public void removeAll(Collection<Sighting> sightings) {
+        sightings.forEach(this::remove);
+    }
+
+    /**
+     * Sightings at a location within a period, ordered by date and time
+     *
+     * @param location location to look for, compared after normalization
+     * @param dateStart first day of the period
+     * @param dateEnd last day of the period
+     * @return a view of the matching posting list, empty if nothing was seen at the location
+     */
+    public Collection<Sighting> find(String location, LocalDate dateStart, LocalDate dateEnd) {
+        String key = normalize(location);
+        NavigableSet<Sighting> postingList = key == null ? null : postings.get(key);
+        if (postingList == null || dateStart.isAfter(dateEnd)) {
+            return Collections.emptyList();
+        }
+        Sighting from = new Sighting(null, null, LocalDateTime.of(dateStart, LocalTime.MIN));
+        Sighting to = new Sighting(null, null, LocalDateTime.of(dateEnd.plusDays(1), LocalTime.MIN));
+        return postingList.subSet(from, true, to, false);
+    }
+
+    /**
+     * Normalize a location: trim, collapse inner whitespaces and lower the case
+     *
+     * @param location location as entered by a user
+     * @return normalized location or null if the location is empty
+     */
+    public static String normalize(String location) {
+        if (location == null) {
+            return null;
+        }
+        String normalized = location.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        return normalized.isEmpty() ? null : normalized;
+    }
+}
@@ -0,0 +1,406 @@
+package com.dataart.exercise.server;
+
+import com.dataart.exercise.Action;
+import com.dataart.exercise.ResponseStatus;
+import com.dataart.exercise.dto.MessageDto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Admission control for the client connections. A connection passes two bounded stages:
+ * the intake stage reads a request, then the request is executed in one of the priority lanes,
+ * so cheap updates are not queued behind expensive listings. When a queue is full or a client
+ * has too many connections in progress the connection is rejected at once with a <b>BUSY</b> response
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ * @see com.dataart.exercise.ResponseStatus
+ */
+public class AdmissionController {
+
+    /**
+     * Timeout in milliseconds to read a request from a client. A client sends its request right after it connects,
+     * so a connection which sends nothing holds an intake thread only shortly
+     */
+    private static final int READ_TIMEOUT = 2*1000;
+
+    /**
+     * Stage which reads the requests
+     */
+    private final Lane intake;
+    /**
+     * Lane for the listings of the birds and the sightings
+     */
+    private final Lane queries;
+    /**
+     * Lane for the other actions
+     */
+    private final Lane updates;
+    /**
+     * Maximum number of the connections in progress per client address, 0 if not limited
+     */
+    private final int clientLimit;
+    /**
+     * Size in bytes of a response which is compressed if the client accepts a compression
+     */
+    private final int compressionThreshold;
+    /**
+     * Number of the connections in progress by client address
+     */
+    private final Map<InetAddress, Integer> connectionsByClient = new ConcurrentHashMap<>();
+    /**
+     * Number of the connections rejected because of the client limit
+     */
+    private final AtomicLong clientRejections = new AtomicLong();
+    /**
+     * Factory of the server workers for a socket and a request read from it
+     */
+    private final BiFunction<Socket, MessageDto, ServerWorker> workerFactory;
+    /**
+     * Dispatcher of the sightings to the watching clients
+     */
+    private final WatchDispatcher watchDispatcher;
+    /**
+     * In-memory storage, reports the progress of the data loading
+     */
+    private final DataStore dataStore;
+    /**
+     * Set when a worker requests the server shutdown
+     */
+    private final AtomicBoolean stopRequested = new AtomicBoolean();
+
+    /**
+     * Bounded executor with its rejection counter
+     */
+    private static class Lane {
+
+        /**
+         * Name of the lane
+         */
+        private final String name;
+        /**
+         * Executor with a bounded queue
+         */
+        private final ThreadPoolExecutor executor;
+        /**
+         * Number of the rejected tasks
+         */
+        private final AtomicLong rejections = new AtomicLong();
+
+        /**
+         * Constructor for Lane
+         *
+         * @param name name of the lane
+         * @param threads number of the threads
+         * @param queueLimit capacity of the queue
+         */
+        Lane(String name, int threads, int queueLimit) {
+            this.name = name;
+            this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueLimit), new ThreadPoolExecutor.AbortPolicy());
+        }
+
+        /**
+         * Submit a task to the lane
+         *
+         * @param task task to execute
+         * @return TRUE if the task is accepted, FALSE if the queue is full
+         */
+        boolean offer(Runnable task) {
+            try {
+                executor.execute(task);
+                return true;
+            } catch (RejectedExecutionException e) {
+                rejections.incrementAndGet();
+                return false;
+            }
+        }
+
+        /**
+         * Put statistics of the lane to a map
+         *
+         * @param stats map of the statistics
+         */
+        void collectStats(Map<String, Object> stats) {
+            stats.put(name + ".queueDepth", executor.getQueue().size());
+            stats.put(name + ".active", executor.getActiveCount());
+            stats.put(name + ".completed", executor.getCompletedTaskCount());
+            stats.put(name + ".rejections", rejections.get());
+        }
+    }
+
+    /**
+     * Constructor for AdmissionController
+     *
+     * @param threads number of the threads in every stage
+     * @param queueLimit capacity of the queue in every stage
+     * @param clientLimit maximum number of the connections in progress per client address, 0 if not limited
+     * @param compressionThreshold size in bytes of a response which is compressed if the client accepts a compression
+     * @param workerFactory factory of the server workers
+     * @param watchDispatcher dispatcher of the sightings to the watching clients
+     * @param dataStore in-memory storage
+     */
+    public AdmissionController(int threads, int queueLimit, int clientLimit, int compressionThreshold,
+                               BiFunction<Socket, MessageDto, ServerWorker> workerFactory, WatchDispatcher watchDispatcher,
+                               DataStore dataStore) {
+        this.intake = new Lane("intake", threads, queueLimit);
+        this.queries = new Lane("queries", threads, queueLimit);
+        this.updates = new Lane("updates", threads, queueLimit);
+        this.clientLimit = clientLimit;
+        this.compressionThreshold = compressionThreshold;
+        this.workerFactory = workerFactory;
+        this.watchDispatcher = watchDispatcher;
+        this.dataStore = dataStore;
+    }
+
+    /**
+     * Admit an accepted connection or reject it if the server is overloaded
+     *
+     * @param s socket of the connection
+     */
+    public void admit(Socket s) {
+        InetAddress client = s.getInetAddress();
+        if (!acquire(client)) {
+            clientRejections.incrementAndGet();
+            reject(s, null, "Too many connections from " + client.getHostAddress());
+            return;
+        }
+        if (!intake.offer(() -> readRequest(s))) {
+            release(client);
+            reject(s, null, "Server is busy, please retry later");
+        }
+    }
+
+    /**
+     * Check if a worker requested the server shutdown
+     *
+     * @return TRUE if the server should be stopped
+     */
+    public boolean isStopRequested() {
+        return stopRequested.get();
+    }
+
+    /**
+     * Statistics of the server: progress of the data loading, queue depths, active and completed tasks, rejections
+     *
+     * @return Map of the statistics
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        dataStore.collectStats(stats);
+        intake.collectStats(stats);
+        queries.collectStats(stats);
+        updates.collectStats(stats);
+        stats.put("clientRejections", clientRejections.get());
+        watchDispatcher.collectStats(stats);
+        return stats;
+    }
+
+    /**
+     * Finish the accepted requests and stop the stages
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void shutdown() throws InterruptedException {
+        intake.executor.shutdown();
+        intake.executor.awaitTermination(READ_TIMEOUT, TimeUnit.MILLISECONDS);
+        queries.executor.shutdown();
+        updates.executor.shutdown();
+        queries.executor.awaitTermination(1, TimeUnit.MINUTES);
+        updates.executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Read a request and pass it to a lane. Executed in the intake stage
+     *
+     * @param s socket of the connection
+     */
+    private void readRequest(Socket s) {
+        InetAddress client = s.getInetAddress();
+        MessageDto request;
+        try {
+            s.setSoTimeout(READ_TIMEOUT);
+            request = MessageCodec.readRequest(s.getInputStream());
+        } catch (Exception e) {
+            System.err.println("Request read error: " + e.getMessage());
+            request = null;
+        }
+        if (request == null || request.getAction() == null) {
+            release(client);
+            close(s);
+            return;
+        }
+        if (request.getAction() == Action.STATUS) {
+            release(client);
+            respond(s, request, new MessageDto(Action.STATUS, stats()));
+            return;
+        }
+        if (request.getAction() == Action.WATCH) {
+            // a watching connection stays open without occupying a lane, so it is not counted for the client limit
+            release(client);
+            watch(s, request);
+            return;
+        }
+        ServerWorker worker = workerFactory.apply(s, request);
+        Lane lane = isQuery(request.getAction()) ? queries : updates;
+        boolean accepted = lane.offer(() -> {
+            try {
+                if (worker.call()) {
+                    stopRequested.set(true);
+                }
+            } catch (Exception e) {
+                System.err.println("Server worker error: " + e.getMessage());
+            } finally {
+                release(client);
+            }
+        });
+        if (!accepted) {
+            release(client);
+            reject(s, request, "Server is busy, please retry later");
+        }
+    }
+
+    /**
+     * Pass a watching connection to the dispatcher
+     *
+     * @param s socket of the connection
+     * @param request request with the watched bird name pattern
+     */
+    private void watch(Socket s, MessageDto request) {
+        if (request.getObject() == null || request.getObject().toString().trim().isEmpty()) {
+            respond(s, request, new MessageDto("FAILURE: Bird name pattern should not be empty"));
+            return;
+        }
+        Pattern birdNamePattern;
+        try {
+            birdNamePattern = Pattern.compile(request.getObject().toString());
+        } catch (PatternSyntaxException e) {
+            respond(s, request, new MessageDto("Pattern error: " + e.getMessage()));
+            return;
+        }
+        try {
+            watchDispatcher.subscribe(s, birdNamePattern, request.getCompression());
+        } catch (IOException e) {
+            System.err.println("Watch subscription error: " + e.getMessage());
+            close(s);
+        }
+    }
+
+    /**
+     * Check if an action is an expensive listing
+     *
+     * @param action requested action
+     * @return TRUE if the action should be executed in the query lane
+     */
+    private boolean isQuery(Action action) {
+        return action == Action.LIST_SIGHTING || action == Action.LIST_BIRDS;
+    }
+
+    /**
+     * Count a new connection of a client if the client is under the limit
+     *
+     * @param client client address
+     * @return TRUE if the connection is counted, FALSE if the client reached the limit
+     */
+    private boolean acquire(InetAddress client) {
+        if (clientLimit <= 0) {
+            return true;
+        }
+        boolean[] acquired = {false};
+        connectionsByClient.compute(client, (k, count) -> {
+            int current = count == null ? 0 : count;
+            if (current >= clientLimit) {
+                return count;
+            }
+            acquired[0] = true;
+            return current + 1;
+        });
+        return acquired[0];
+    }
+
+    /**
+     * Uncount a finished connection of a client
+     *
+     * @param client client address
+     */
+    private void release(InetAddress client) {
+        if (clientLimit <= 0) {
+            return;
+        }
+        connectionsByClient.computeIfPresent(client, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Send a <b>BUSY</b> response and close a connection
+     *
+     * @param s socket of the connection
+     * @param request request from the client or null if the request was not read
+     * @param comment reason of the rejection
+     */
+    private void reject(Socket s, MessageDto request, String comment) {
+        System.err.println("Connection rejected: " + comment);
+        respond(s, request, new MessageDto(ResponseStatus.BUSY, comment));
+    }
+
+    /**
+     * Send a response in the framing of the request and close a connection
+     *
+     * @param s socket of the connection
+     * @param request request from the client or null if the request was not read
+     * @param response response to the client
+     */
+    private void respond(Socket s, MessageDto request, MessageDto response) {
+        try {
+            if (request == null) {
+                discardUnread(s);
+            }
+            MessageCodec.writeResponse(request, response, compressionThreshold, s.getOutputStream());
+        } catch (IOException e) {
+            System.err.println("Socket write Error");
+        } finally {
+            close(s);
+        }
+    }
+
+    /**
+     * Skip the part of a request already received on a connection which is answered without reading its request.
+     * A socket closed with unread data is reset, and the reset may discard the response before the client reads it
+     *
+     * @param s socket of the connection
+     * @throws IOException if there is an issue with the connection
+     */
+    private void discardUnread(Socket s) throws IOException {
+        InputStream is = s.getInputStream();
+        for (int available = is.available(); available > 0; available = is.available()) {
+            is.skip(available);
+        }
+    }
+
+    /**
+     * Close a connection
+     *
+     * @param s socket of the connection
+     */
+    private void close(Socket s) {
+        try {
+            s.close();
+        } catch (IOException e) {
+            System.err.println("Socket Close Error");
+        }
+    }
+}
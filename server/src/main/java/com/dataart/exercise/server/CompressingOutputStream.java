@@ -0,0 +1,176 @@
+package com.dataart.exercise.server;
+
+import com.dataart.exercise.Compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stream of a response body. For a client which accepts a compression the body is held back
+ * until it exceeds the threshold: then a header line with the compression name is written and
+ * the rest of the body is compressed on the fly. A body which never exceeds the threshold is sent
+ * as is after the <b>IDENTITY</b> header line. For a client which does not accept a compression
+ * the body is sent as is without the header line
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ * @see com.dataart.exercise.Compression
+ */
+public class CompressingOutputStream extends OutputStream {
+
+    /**
+     * Stream of the connection, counts the bytes sent
+     */
+    private final CountingOutputStream out;
+    /**
+     * Compression accepted by the client
+     */
+    private final Compression compression;
+    /**
+     * Size in bytes of a body which is worth to compress
+     */
+    private final int threshold;
+    /**
+     * The beginning of the body while the compression is not decided
+     */
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    /**
+     * Stream of the body when the compression is decided
+     */
+    private OutputStream body;
+    /**
+     * Compression of the body when decided
+     */
+    private Compression applied;
+    /**
+     * Number of the bytes of the body before compression
+     */
+    private long bodyBytes;
+
+    /**
+     * Stream which counts the bytes passed through it
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        /**
+         * Number of the bytes written
+         */
+        private long count;
+
+        /**
+         * Constructor for CountingOutputStream
+         *
+         * @param out underlying stream
+         */
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * Constructor for CompressingOutputStream
+     *
+     * @param out stream of the connection
+     * @param compression compression accepted by the client or null if the client does not accept a compression
+     * @param threshold size in bytes of a body which is worth to compress
+     */
+    public CompressingOutputStream(OutputStream out, Compression compression, int threshold) {
+        this.out = new CountingOutputStream(out);
+        this.compression = compression;
+        this.threshold = threshold;
+        if (compression == null) {
+            applied = Compression.IDENTITY;
+            body = this.out;
+            pending = null;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        bodyBytes += len;
+        if (body != null) {
+            body.write(b, off, len);
+            return;
+        }
+        pending.write(b, off, len);
+        if (pending.size() > threshold) {
+            decide(compression);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (body != null) {
+            body.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (body == null) {
+            decide(Compression.IDENTITY);
+        }
+        body.close();
+    }
+
+    /**
+     * Compression applied to the body
+     *
+     * @return Compression of the body or null if the body is not sent yet
+     */
+    public Compression getApplied() {
+        return applied;
+    }
+
+    /**
+     * Number of the bytes sent to the connection
+     *
+     * @return number of the sent bytes
+     */
+    public long getSentBytes() {
+        return out.count;
+    }
+
+    /**
+     * Summary of the sent body for the server log
+     *
+     * @return String with the compression and the sizes of the body
+     */
+    public String summary() {
+        return (applied == null ? "" : applied.name()) + " " + bodyBytes + " -> " + out.count + " bytes";
+    }
+
+    /**
+     * Write the header line and the held back beginning of the body
+     *
+     * @param applied compression of the body
+     * @throws IOException if there is an issue with the connection
+     */
+    private void decide(Compression applied) throws IOException {
+        this.applied = applied;
+        out.write((applied.name() + "\n").getBytes(StandardCharsets.US_ASCII));
+        body = applied.wrap((OutputStream) out);
+        pending.writeTo(body);
+        pending = null;
+    }
+}
@@ -0,0 +1,505 @@
+package com.dataart.exercise.server;
+
+import com.dataart.exercise.archive.SegmentStore;
+import com.dataart.exercise.entity.Bird;
+import com.dataart.exercise.entity.Sighting;
+import com.dataart.exercise.index.BirdAttributeIndex;
+import com.dataart.exercise.index.BirdNameIndex;
+import com.dataart.exercise.index.LocationIndex;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * In-memory storage of the server with its indexes. The storage is filled in the background while
+ * the server already accepts requests: the birds are loaded first, then the sightings bird by bird.
+ * A request waits only for the part of the data it needs. The old sightings are moved from memory
+ * to the archive of compressed segments. Every change of the data increases its version, and the recent
+ * changes of the birds are logged, so a client which knows a version receives only the changes since it.
+ * The mutations are applied by the calling threads in the shared mode, or by the writers of the shards
+ * in the sharded mode
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ */
+public class DataStore {
+
+    /**
+     * Maximum number of the logged changes of the birds
+     */
+    private static final int CHANGE_LOG_LIMIT = 10000;
+
+    /**
+     * State of the data loading
+     */
+    public enum LoadState {
+        LOADING_BIRDS,
+        LOADING_SIGHTINGS,
+        READY,
+        FAILED
+    }
+
+    /**
+     * In-memory storage for the birds
+     */
+    @Getter
+    private final Map<String, Bird> birds = new ConcurrentHashMap<>();
+    /**
+     * In-memory storage for the sightings
+     */
+    @Getter
+    private final Map<String, List<Sighting>> sightings = new ConcurrentHashMap<>();
+    /**
+     * Index of the sightings by location
+     */
+    @Getter
+    private final LocationIndex locationIndex = new LocationIndex();
+    /**
+     * Index of the bird names
+     */
+    @Getter
+    private final BirdNameIndex birdNameIndex = new BirdNameIndex();
+    /**
+     * Index of the birds by weight, height and color
+     */
+    @Getter
+    private final BirdAttributeIndex birdAttributeIndex = new BirdAttributeIndex();
+    /**
+     * Archive of the old sightings
+     */
+    @Getter
+    private final SegmentStore segmentStore;
+    /**
+     * Writer of the mutations in the sharded mode, null in the shared mode
+     */
+    private final ShardedWriter shardedWriter;
+    /**
+     * Birds and sighting lists changed in place by the mutations in the shared mode
+     */
+    private final MutationContext sharedContext = new MutationContext() {
+        @Override
+        public Bird getBird(String birdName) {
+            return birds.get(birdName);
+        }
+
+        @Override
+        public void putBird(Bird bird) {
+            birds.put(bird.getName(), bird);
+        }
+
+        @Override
+        public void removeBird(String birdName) {
+            birds.remove(birdName);
+        }
+
+        @Override
+        public List<Sighting> getSightings(String birdName) {
+            return sightings.get(birdName);
+        }
+
+        @Override
+        public List<Sighting> sightingsForUpdate(String birdName) {
+            return sightings.computeIfAbsent(birdName, k -> new ArrayList<>());
+        }
+
+        @Override
+        public void removeSightings(String birdName) {
+            sightings.remove(birdName);
+        }
+
+        @Override
+        public void afterPublish(Runnable action) {
+            action.run();
+        }
+    };
+    /**
+     * Names of the birds whose sightings are already loaded
+     */
+    private final Set<String> residentSightings = ConcurrentHashMap.newKeySet();
+    /**
+     * Number of the loaded sightings
+     */
+    private final AtomicLong loadedSightings = new AtomicLong();
+    /**
+     * Monitor to wait for the data loading
+     */
+    private final Object loadMonitor = new Object();
+    /**
+     * Lock which makes the archiving runs mutually exclusive
+     */
+    private final Object archiveLock = new Object();
+    /**
+     * Current state of the data loading
+     */
+    @Getter
+    private volatile LoadState loadState = LoadState.LOADING_BIRDS;
+    /**
+     * Current version of the data. Starts from the start time of the server in microseconds,
+     * so a version from an earlier run of the server is older than any version of this run
+     */
+    private final AtomicLong version = new AtomicLong(System.currentTimeMillis() * 1000);
+    /**
+     * Names of the changed birds by the version of the change
+     */
+    private final NavigableMap<Long, String> birdChanges = new ConcurrentSkipListMap<>();
+    /**
+     * Version since which all the changes of the birds are logged
+     */
+    private volatile long changeLogStart = version.get();
+
+    /**
+     * Constructor for DataStore
+     *
+     * @param segmentStore archive of the old sightings
+     * @param writeShards number of the shards with their own writers, 0 for the shared mode
+     */
+    public DataStore(SegmentStore segmentStore, int writeShards) {
+        this.segmentStore = segmentStore;
+        this.shardedWriter = writeShards > 0 ? new ShardedWriter(writeShards, birds, sightings) : null;
+    }
+
+    /**
+     * Apply a mutation of a bird and its sightings. In the sharded mode the mutation is applied by the writer
+     * of the shard of the bird after the mutations submitted before it, otherwise by the calling thread
+     *
+     * @param birdName name of the bird changed by the mutation
+     * @param mutation mutation to apply
+     * @param <T> result of the mutation
+     * @return result of the mutation
+     * @throws IOException if the mutation failed to read the archive
+     * @throws InterruptedException if interrupted while waiting for the writer
+     * @throws IllegalStateException if the server is shutting down
+     */
+    public <T> T mutate(String birdName, Mutation<T> mutation) throws IOException, InterruptedException {
+        if (shardedWriter == null) {
+            return mutation.apply(sharedContext);
+        }
+        return shardedWriter.submit(birdName, mutation);
+    }
+
+    /**
+     * Sightings of a bird which do not change while they are read. In the sharded mode the published list
+     * is immutable, in the shared mode the list is changed in place, so it is copied under its lock
+     *
+     * @param birdName name of the bird
+     * @return List of the sightings, empty if the bird has no sightings
+     */
+    public List<Sighting> getSightingsSnapshot(String birdName) {
+        List<Sighting> sightingList = sightings.get(birdName);
+        if (sightingList == null) {
+            return Collections.emptyList();
+        }
+        if (shardedWriter != null) {
+            return sightingList;
+        }
+        synchronized (sightingList) {
+            return new ArrayList<>(sightingList);
+        }
+    }
+
+    /**
+     * Stop the writers of the shards after the waiting mutations
+     *
+     * @throws InterruptedException if interrupted while waiting for the writers
+     */
+    public void shutdown() throws InterruptedException {
+        if (shardedWriter != null) {
+            shardedWriter.shutdown();
+        }
+    }
+
+    /**
+     * Put a bird read from the data store
+     *
+     * @param bird loaded bird
+     */
+    public void addLoadedBird(Bird bird) {
+        if (birds.putIfAbsent(bird.getName(), bird) == null) {
+            birdNameIndex.add(bird.getName());
+            birdAttributeIndex.add(bird);
+        }
+    }
+
+    /**
+     * Mark the birds as loaded
+     */
+    public void birdsLoaded() {
+        changeLogStart = changed();
+        changeState(LoadState.LOADING_SIGHTINGS);
+    }
+
+    /**
+     * Put a group of sightings read from the data store and mark their birds as resident.
+     * The sightings which are already archived are skipped
+     *
+     * @param sightingList loaded sightings, usually of one bird
+     * @param isArchived condition which is TRUE for an archived sighting
+     */
+    public void addLoadedSightings(List<Sighting> sightingList, Predicate<Sighting> isArchived) {
+        int added = 0;
+        for (Sighting sighting : sightingList) {
+            if (isArchived.test(sighting)) {
+                continue;
+            }
+            sightings.computeIfAbsent(sighting.getBirdName(), k -> new ArrayList<>()).add(sighting);
+            locationIndex.add(sighting);
+            birdNameIndex.add(sighting.getBirdName());
+            added++;
+        }
+        loadedSightings.addAndGet(added);
+        synchronized (loadMonitor) {
+            sightingList.forEach(sighting -> residentSightings.add(sighting.getBirdName()));
+            loadMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Mark all the data as loaded
+     */
+    public void sightingsLoaded() {
+        changed();
+        changeState(LoadState.READY);
+        residentSightings.clear();
+    }
+
+    /**
+     * Mark the data loading as failed. The waiting requests are released with an error
+     */
+    public void loadFailed() {
+        changeState(LoadState.FAILED);
+    }
+
+    /**
+     * Check if all the data is loaded
+     *
+     * @return TRUE if the data is loaded
+     */
+    public boolean isLoaded() {
+        return loadState == LoadState.READY;
+    }
+
+    /**
+     * Wait until the birds are loaded
+     *
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if the data loading failed
+     */
+    public void awaitBirds() throws InterruptedException {
+        synchronized (loadMonitor) {
+            while (loadState == LoadState.LOADING_BIRDS) {
+                loadMonitor.wait();
+            }
+        }
+        checkNotFailed();
+    }
+
+    /**
+     * Wait until the sightings of a bird are loaded
+     *
+     * @param birdName name of the bird
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if the data loading failed
+     */
+    public void awaitSightings(String birdName) throws InterruptedException {
+        synchronized (loadMonitor) {
+            while (loadState == LoadState.LOADING_BIRDS
+                    || loadState == LoadState.LOADING_SIGHTINGS && !residentSightings.contains(birdName)) {
+                loadMonitor.wait();
+            }
+        }
+        checkNotFailed();
+    }
+
+    /**
+     * Wait until all the data is loaded
+     *
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if the data loading failed
+     */
+    public void awaitAll() throws InterruptedException {
+        synchronized (loadMonitor) {
+            while (loadState == LoadState.LOADING_BIRDS || loadState == LoadState.LOADING_SIGHTINGS) {
+                loadMonitor.wait();
+            }
+        }
+        checkNotFailed();
+    }
+
+    /**
+     * Current version of the data
+     *
+     * @return version
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Increase the version after a change of the data
+     *
+     * @return new version
+     */
+    public synchronized long changed() {
+        return version.incrementAndGet();
+    }
+
+    /**
+     * Increase the version after a bird was added, changed or removed and log the change. The oldest changes
+     * are dropped from the log when it is full
+     *
+     * @param birdName name of the changed bird
+     * @return new version
+     */
+    public synchronized long birdChanged(String birdName) {
+        long newVersion = version.incrementAndGet();
+        birdChanges.put(newVersion, birdName);
+        while (birdChanges.size() > CHANGE_LOG_LIMIT) {
+            changeLogStart = birdChanges.pollFirstEntry().getKey();
+        }
+        return newVersion;
+    }
+
+    /**
+     * Names of the birds changed after a version up to another version
+     *
+     * @param since version known to the client
+     * @param until current version
+     * @return names of the changed birds or null if the changes since the version are not logged
+     */
+    public synchronized Set<String> birdChangesSince(long since, long until) {
+        if (since < changeLogStart || since > until) {
+            return null;
+        }
+        return new LinkedHashSet<>(birdChanges.subMap(since, false, until, true).values());
+    }
+
+    /**
+     * Move the sightings older than a moment from memory to the archive. The sightings are removed
+     * from memory only after the archive is written, and the queries skip them in memory until then.
+     * The runs are mutually exclusive, so a run never collects the sightings which another run is still archiving
+     *
+     * @param cutoff moment before which the sightings are archived
+     * @return number of the archived sightings
+     * @throws IOException if the archive cannot be written
+     * @throws InterruptedException if interrupted while waiting for the writers
+     */
+    public int archiveOlderThan(LocalDateTime cutoff) throws IOException, InterruptedException {
+        synchronized (archiveLock) {
+            return archive(cutoff);
+        }
+    }
+
+    /**
+     * Move the sightings older than a moment from memory to the archive. Executed under the archive lock
+     *
+     * @param cutoff moment before which the sightings are archived
+     * @return number of the archived sightings
+     * @throws IOException if the archive cannot be written
+     * @throws InterruptedException if interrupted while waiting for the writers
+     */
+    private int archive(LocalDateTime cutoff) throws IOException, InterruptedException {
+        List<Sighting> archived = new ArrayList<>();
+        for (List<Sighting> sightingList : sightings.values()) {
+            synchronized (sightingList) {
+                for (Sighting sighting : sightingList) {
+                    if (sighting.getSightingDateTime().isBefore(cutoff)) {
+                        archived.add(sighting);
+                    }
+                }
+            }
+        }
+        if (archived.isEmpty()) {
+            return 0;
+        }
+        segmentStore.archive(archived);
+        Map<String, Set<Sighting>> archivedByBird = new HashMap<>();
+        for (Sighting sighting : archived) {
+            archivedByBird.computeIfAbsent(sighting.getBirdName(), k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(sighting);
+        }
+        for (Map.Entry<String, Set<Sighting>> birdArchived : archivedByBird.entrySet()) {
+            mutate(birdArchived.getKey(), context -> {
+                if (context.getSightings(birdArchived.getKey()) != null) {
+                    List<Sighting> sightingList = context.sightingsForUpdate(birdArchived.getKey());
+                    synchronized (sightingList) {
+                        sightingList.removeIf(birdArchived.getValue()::contains);
+                    }
+                }
+                return null;
+            });
+        }
+        locationIndex.removeAll(archived);
+        // a failed run leaves its sightings marked, so the queries keep skipping them in memory until the next run
+        segmentStore.archivingCompleted();
+        return archived.size();
+    }
+
+    /**
+     * Remove the archived sightings of a bird. Waits for an archiving run in progress, so a run which collected
+     * the sightings of the bird before it was removed does not leave them in the archive. Increases the version
+     * if any sighting was removed
+     *
+     * @param birdName name of the bird
+     * @throws IOException if the archive cannot be rewritten
+     */
+    public void removeArchived(String birdName) throws IOException {
+        synchronized (archiveLock) {
+            if (segmentStore.removeBird(birdName)) {
+                changed();
+            }
+        }
+    }
+
+    /**
+     * Put readiness and progress of the data loading to a map
+     *
+     * @param stats map of the statistics
+     */
+    public void collectStats(Map<String, Object> stats) {
+        stats.put("data.state", loadState);
+        stats.put("data.version", version.get());
+        stats.put("data.birds", birds.size());
+        stats.put("data.birdsWithSightingsLoaded", isLoaded() ? sightings.size() : residentSightings.size());
+        stats.put("data.sightingsLoaded", loadedSightings.get());
+        segmentStore.collectStats(stats);
+        if (shardedWriter != null) {
+            shardedWriter.collectStats(stats);
+        }
+    }
+
+    /**
+     * Change the state of the data loading and wake up the waiting requests
+     *
+     * @param loadState new state
+     */
+    private void changeState(LoadState loadState) {
+        synchronized (loadMonitor) {
+            this.loadState = loadState;
+            loadMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Check that the data loading did not fail
+     *
+     * @throws IllegalStateException if the data loading failed
+     */
+    private void checkNotFailed() {
+        if (loadState == LoadState.FAILED) {
+            throw new IllegalStateException("Data is not available because loading of the data store failed");
+        }
+    }
+}
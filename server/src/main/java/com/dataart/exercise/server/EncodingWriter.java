@@ -0,0 +1,134 @@
+package com.dataart.exercise.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CharsetEncoder;
+
+/**
+ * Writer which encodes characters into a byte stream with a reused encoder and byte buffer.
+ * Unlike OutputStreamWriter, its stream and encoder are switched for every response,
+ * so a thread writes all its responses through one writer
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ * @see com.dataart.exercise.server.MessageCodec
+ */
+final class EncodingWriter extends Writer {
+
+    /**
+     * Size in bytes of the encoded chunks written to the stream
+     */
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * Encoded bytes not written to the stream yet
+     */
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    /**
+     * High surrogate of a pair split between two writes
+     */
+    private final CharBuffer carry = CharBuffer.allocate(2);
+    /**
+     * View of the last written char array
+     */
+    private CharBuffer chars = CharBuffer.allocate(0);
+    /**
+     * Encoder of the current response
+     */
+    private CharsetEncoder encoder;
+    /**
+     * Stream of the current response
+     */
+    private OutputStream out;
+
+    /**
+     * Start writing a response
+     *
+     * @param out stream of the response
+     * @param encoder encoder of the charset of the response, owned by the thread
+     */
+    void open(OutputStream out, CharsetEncoder encoder) {
+        this.out = out;
+        this.encoder = encoder.reset();
+        bytes.clear();
+        carry.clear();
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        if (chars.array() != cbuf) {
+            chars = CharBuffer.wrap(cbuf);
+        }
+        chars.limit(off + len).position(off);
+        while (carry.position() > 0 && chars.hasRemaining()) {
+            carry.put(chars.get()).flip();
+            encode(carry, false);
+            carry.compact();
+        }
+        encode(chars, false);
+        while (chars.hasRemaining()) {
+            carry.put(chars.get());
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    /**
+     * Encode the rest of the response and write it to the stream. The stream is not closed
+     * and the writer may be opened again for the next response
+     *
+     * @throws IOException if there is an issue with the stream
+     */
+    @Override
+    public void close() throws IOException {
+        carry.flip();
+        encode(carry, true);
+        carry.clear();
+        while (encoder.flush(bytes).isOverflow()) {
+            drain();
+        }
+        drain();
+        out = null;
+    }
+
+    /**
+     * Encode characters, writing the bytes to the stream whenever the byte buffer is full.
+     * Unless it is the end of input, an unpaired high surrogate is left in the characters
+     *
+     * @param in characters to encode
+     * @param endOfInput whether no more characters follow
+     * @throws IOException if there is an issue with the stream
+     */
+    private void encode(CharBuffer in, boolean endOfInput) throws IOException {
+        CoderResult result = encoder.encode(in, bytes, endOfInput);
+        while (result.isOverflow()) {
+            drain();
+            result = encoder.encode(in, bytes, endOfInput);
+        }
+        if (result.isError()) {
+            result.throwException();
+        }
+    }
+
+    /**
+     * Write the encoded bytes to the stream
+     *
+     * @throws IOException if there is an issue with the stream
+     */
+    private void drain() throws IOException {
+        if (bytes.position() > 0) {
+            out.write(bytes.array(), 0, bytes.position());
+            bytes.clear();
+        }
+    }
+}
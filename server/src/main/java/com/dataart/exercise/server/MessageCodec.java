@@ -0,0 +1,526 @@
+package com.dataart.exercise.server;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.parser.DefaultJSONParser;
+import com.alibaba.fastjson.parser.Feature;
+import com.alibaba.fastjson.parser.JSONLexer;
+import com.alibaba.fastjson.parser.JSONToken;
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.parser.deserializer.ObjectDeserializer;
+import com.alibaba.fastjson.parser.deserializer.Jdk8DateCodec;
+import com.alibaba.fastjson.serializer.JSONSerializer;
+import com.alibaba.fastjson.serializer.ObjectSerializer;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+import com.alibaba.fastjson.serializer.SerializeWriter;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.alibaba.fastjson.util.TypeUtils;
+import com.dataart.exercise.Action;
+import com.dataart.exercise.Compression;
+import com.dataart.exercise.ResponseStatus;
+import com.dataart.exercise.dto.MessageDto;
+import com.dataart.exercise.entity.Bird;
+import com.dataart.exercise.entity.Sighting;
+import com.dataart.exercise.event.RequestParseEvent;
+import com.dataart.exercise.event.RequestReadEvent;
+import com.dataart.exercise.event.ResponseWriteEvent;
+import com.dataart.exercise.request.BirdsRequest;
+import com.dataart.exercise.request.SightingsRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * Codec of the messages on a connection. A request line is read into a byte buffer reused by the thread,
+ * decoded into a reused char buffer and parsed by the parser of the thread straight into the entity
+ * of the action, without an intermediate String or JSON tree. A response is serialized by the serializer
+ * of the thread and encoded in chunks into the stream of the connection. Neither requests nor responses
+ * carry references, so the circular reference detection of fastjson is disabled for both
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ * @see com.dataart.exercise.dto.MessageDto
+ */
+public final class MessageCodec {
+
+    /**
+     * Maximum size in bytes of a request line
+     */
+    private static final int MAX_REQUEST_SIZE = 16*1024*1024;
+    /**
+     * Maximum size in bytes of a buffer kept by a thread between the requests
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64*1024;
+    /**
+     * Charset of the plain messages, the same as used by the client
+     */
+    private static final Charset CHARSET = Charset.defaultCharset();
+    /**
+     * Parser configuration which decodes MessageDto by action
+     */
+    private static final ParserConfig PARSER_CONFIG = new ParserConfig();
+    /**
+     * Serializer configuration which writes the date and time of a sighting without a formatter
+     */
+    private static final SerializeConfig SERIALIZE_CONFIG = new SerializeConfig();
+    /**
+     * Initial size in bytes of the request buffer of a thread
+     */
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+    /**
+     * Request decoder of the thread
+     */
+    private static final ThreadLocal<RequestDecoder> REQUEST_DECODER = ThreadLocal.withInitial(RequestDecoder::new);
+    /**
+     * Response encoder of the thread
+     */
+    private static final ThreadLocal<ResponseEncoder> RESPONSE_ENCODER = ThreadLocal.withInitial(ResponseEncoder::new);
+
+    static {
+        PARSER_CONFIG.putDeserializer(MessageDto.class, new MessageDtoDeserializer());
+        SERIALIZE_CONFIG.put(LocalDateTime.class, new LocalDateTimeSerializer());
+    }
+
+    /**
+     * Deserializer of MessageDto which parses the object of a message as the entity of its action
+     */
+    private static class MessageDtoDeserializer implements ObjectDeserializer {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T deserialze(DefaultJSONParser parser, Type type, Object fieldName) {
+            JSONLexer lexer = parser.lexer;
+            if (lexer.token() == JSONToken.NULL) {
+                lexer.nextToken(JSONToken.COMMA);
+                return null;
+            }
+            if (lexer.token() != JSONToken.LBRACE) {
+                throw new JSONException("Message expected, but found " + JSONToken.name(lexer.token()));
+            }
+            MessageDto messageDto = new MessageDto();
+            boolean isObjectTyped = false;
+            lexer.nextToken();
+            while (lexer.token() != JSONToken.RBRACE) {
+                if (lexer.token() == JSONToken.COMMA) {
+                    lexer.nextToken();
+                    continue;
+                }
+                if (lexer.token() != JSONToken.LITERAL_STRING) {
+                    throw new JSONException("Field name expected, but found " + JSONToken.name(lexer.token()));
+                }
+                String key = lexer.stringVal();
+                lexer.nextTokenWithColon();
+                switch (key) {
+                    case "action":
+                        messageDto.setAction(parser.parseObject(Action.class));
+                        break;
+                    case "object":
+                        // the fields are serialized in the alphabetical order, so the action is usually known here
+                        isObjectTyped = messageDto.getAction() != null;
+                        messageDto.setObject(isObjectTyped ? parser.parseObject(objectType(messageDto.getAction())) : parser.parse());
+                        break;
+                    case "comment":
+                        messageDto.setComment(parser.parseObject(String.class));
+                        break;
+                    case "compression":
+                        messageDto.setCompression(parser.parseObject(Compression.class));
+                        break;
+                    case "status":
+                        messageDto.setStatus(parser.parseObject(ResponseStatus.class));
+                        break;
+                    case "version":
+                        messageDto.setVersion(parser.parseObject(Long.class));
+                        break;
+                    case "ifNewerThan":
+                        messageDto.setIfNewerThan(parser.parseObject(Long.class));
+                        break;
+                    default:
+                        parser.parse();
+                }
+            }
+            lexer.nextToken(JSONToken.COMMA);
+            if (!isObjectTyped && messageDto.getObject() != null && messageDto.getAction() != null) {
+                messageDto.setObject(TypeUtils.cast(messageDto.getObject(), objectType(messageDto.getAction()), PARSER_CONFIG));
+            }
+            return (T) messageDto;
+        }
+
+        @Override
+        public int getFastMatchToken() {
+            return JSONToken.LBRACE;
+        }
+    }
+
+    /**
+     * Serializer of LocalDateTime. The stock codec of fastjson creates a DateTimeFormatter and a String
+     * for every value, while a response lists thousands of sightings. The default format is written
+     * digit by digit, any other case is left to the stock codec
+     */
+    private static class LocalDateTimeSerializer implements ObjectSerializer {
+
+        /**
+         * Pattern written by this serializer
+         */
+        private static final String PATTERN = "yyyy-MM-dd HH:mm:ss";
+
+        @Override
+        public void write(JSONSerializer serializer, Object object, Object fieldName, Type fieldType, int features) throws IOException {
+            LocalDateTime dateTime = (LocalDateTime) object;
+            SerializeWriter out = serializer.out;
+            if (dateTime == null || dateTime.getNano() != 0 || dateTime.getYear() < 1 || dateTime.getYear() > 9999
+                    || serializer.getDateFormatPattern() != null || !PATTERN.equals(JSON.DEFFAULT_DATE_FORMAT)
+                    || (features & SerializerFeature.UseISO8601DateFormat.mask) != 0
+                    || serializer.isEnabled(SerializerFeature.UseISO8601DateFormat)
+                    || out.isEnabled(SerializerFeature.UseSingleQuotes)) {
+                Jdk8DateCodec.instance.write(serializer, object, fieldName, fieldType, features);
+                return;
+            }
+            out.write('"');
+            writeDigits(out, dateTime.getYear(), 4);
+            out.write('-');
+            writeDigits(out, dateTime.getMonthValue(), 2);
+            out.write('-');
+            writeDigits(out, dateTime.getDayOfMonth(), 2);
+            out.write(' ');
+            writeDigits(out, dateTime.getHour(), 2);
+            out.write(':');
+            writeDigits(out, dateTime.getMinute(), 2);
+            out.write(':');
+            writeDigits(out, dateTime.getSecond(), 2);
+            out.write('"');
+        }
+
+        /**
+         * Write a number padded with zeros
+         *
+         * @param out writer of the response
+         * @param value non-negative number
+         * @param width number of the digits
+         */
+        private static void writeDigits(SerializeWriter out, int value, int width) {
+            int divisor = 1;
+            for (int i = 1; i < width; i++) {
+                divisor *= 10;
+            }
+            for (; divisor > 0; divisor /= 10) {
+                out.write('0' + value / divisor % 10);
+            }
+        }
+    }
+
+    /**
+     * Buffers, lexer and parser of the requests read by a thread
+     */
+    private static class RequestDecoder {
+
+        /**
+         * Decoder of the request charset
+         */
+        private final CharsetDecoder decoder = CHARSET.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        /**
+         * Lexer reset for every request
+         */
+        private final RequestLexer lexer = new RequestLexer(JSON.DEFAULT_PARSER_FEATURE | Feature.DisableCircularReferenceDetect.mask);
+        /**
+         * Parser over the lexer
+         */
+        private final DefaultJSONParser parser = new DefaultJSONParser(lexer, PARSER_CONFIG);
+        /**
+         * Request bytes
+         */
+        private ByteBuffer bytes;
+        /**
+         * Request characters, large enough for any content of the byte buffer
+         */
+        private CharBuffer chars;
+
+        /**
+         * Constructor for RequestDecoder
+         */
+        RequestDecoder() {
+            allocate(new byte[INITIAL_BUFFER_SIZE]);
+        }
+
+        /**
+         * Request buffer
+         *
+         * @return byte array of the request
+         */
+        byte[] buffer() {
+            return bytes.array();
+        }
+
+        /**
+         * Double the request buffer keeping its content
+         *
+         * @return grown byte array of the request
+         */
+        byte[] grow() {
+            allocate(Arrays.copyOf(bytes.array(), Math.min(bytes.capacity() * 2, MAX_REQUEST_SIZE)));
+            return bytes.array();
+        }
+
+        /**
+         * Whether the buffers are small enough to be kept by the thread between the requests
+         *
+         * @return true if the decoder may be reused
+         */
+        boolean isRetained() {
+            return bytes.capacity() <= MAX_RETAINED_BUFFER_SIZE;
+        }
+
+        /**
+         * Decode and parse a request line
+         *
+         * @param length number of the bytes of the line in the buffer
+         * @return MessageDto request
+         * @throws JSONException if the line is not a message
+         */
+        MessageDto decode(int length) {
+            bytes.limit(length).position(0);
+            chars.clear();
+            decoder.reset();
+            decoder.decode(bytes, chars, true);
+            decoder.flush(chars);
+            lexer.reset(chars.array(), chars.position());
+            parser.resolveStatus = DefaultJSONParser.NONE;
+            MessageDto request = parser.parseObject(MessageDto.class);
+            parser.handleResovleTask(request);
+            if (lexer.token() != JSONToken.EOF) {
+                throw new JSONException("not close json text, token : " + JSONToken.name(lexer.token()));
+            }
+            return request;
+        }
+
+        /**
+         * Replace the buffers
+         *
+         * @param buffer new request buffer
+         */
+        private void allocate(byte[] buffer) {
+            bytes = ByteBuffer.wrap(buffer);
+            chars = CharBuffer.allocate((int) Math.ceil(buffer.length * (double) decoder.maxCharsPerByte()));
+        }
+    }
+
+    /**
+     * Serializer and encoders of the responses written by a thread
+     */
+    private static class ResponseEncoder {
+
+        /**
+         * Encoder of the plain responses
+         */
+        private final CharsetEncoder plainEncoder = newEncoder(CHARSET);
+        /**
+         * Encoder of the responses to the requests which offer a compression
+         */
+        private final CharsetEncoder compressedEncoder = newEncoder(StandardCharsets.UTF_8);
+        /**
+         * Writer of the encoded chunks into the stream of the response
+         */
+        private final EncodingWriter writer = new EncodingWriter();
+        /**
+         * Character buffer of the serializer, flushed to the writer when full
+         */
+        private final SerializeWriter out = new SerializeWriter(writer);
+        /**
+         * Serializer of the responses
+         */
+        private final JSONSerializer serializer = new JSONSerializer(out, SERIALIZE_CONFIG);
+
+        /**
+         * Constructor for ResponseEncoder
+         */
+        ResponseEncoder() {
+            out.config(SerializerFeature.DisableCircularReferenceDetect, true);
+        }
+
+        /**
+         * Serialize a response line into a stream
+         *
+         * @param response response to the client
+         * @param charsetEncoder encoder of the charset of the response
+         * @param os stream of the response, not closed
+         * @throws IOException if there is an issue with the stream
+         */
+        void encode(MessageDto response, CharsetEncoder charsetEncoder, OutputStream os) throws IOException {
+            writer.open(os, charsetEncoder);
+            try {
+                serializer.write(response);
+                out.write('\n');
+                out.flush();
+            } catch (JSONException e) {
+                // the serializer reports the failures of the stream as JSONException
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw e;
+            }
+            writer.close();
+        }
+
+        /**
+         * Encoder which replaces the characters not mappable to a charset, as String.getBytes does
+         *
+         * @param charset charset of the responses
+         * @return CharsetEncoder of the charset
+         */
+        private static CharsetEncoder newEncoder(Charset charset) {
+            return charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+    }
+
+    private MessageCodec() {
+    }
+
+    /**
+     * Read and decode a request line
+     *
+     * @param is stream of the connection
+     * @return MessageDto request or null if the connection is closed without a request
+     * @throws IOException if there is an issue with the connection or the request is too large
+     */
+    public static MessageDto readRequest(InputStream is) throws IOException {
+        RequestReadEvent readEvent = new RequestReadEvent();
+        readEvent.begin();
+        RequestDecoder decoder = REQUEST_DECODER.get();
+        try {
+            return readRequest(is, decoder, readEvent);
+        } finally {
+            if (!decoder.isRetained()) {
+                REQUEST_DECODER.remove();
+            }
+        }
+    }
+
+    /**
+     * Read and decode a request line with the decoder of the thread
+     *
+     * @param is stream of the connection
+     * @param decoder decoder of the thread
+     * @param readEvent event of the read, begun
+     * @return MessageDto request or null if the connection is closed without a request
+     * @throws IOException if there is an issue with the connection or the request is too large
+     */
+    private static MessageDto readRequest(InputStream is, RequestDecoder decoder, RequestReadEvent readEvent) throws IOException {
+        byte[] buffer = decoder.buffer();
+        int length = 0;
+        int lineEnd = -1;
+        while (lineEnd < 0) {
+            if (length == buffer.length) {
+                if (buffer.length >= MAX_REQUEST_SIZE) {
+                    throw new IOException("Request is larger than " + MAX_REQUEST_SIZE + " bytes");
+                }
+                buffer = decoder.grow();
+            }
+            int read = is.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                lineEnd = length;
+                break;
+            }
+            for (int i = length; i < length + read; i++) {
+                if (buffer[i] == '\n') {
+                    lineEnd = i;
+                    break;
+                }
+            }
+            length += read;
+        }
+        if (lineEnd > 0 && buffer[lineEnd - 1] == '\r') {
+            lineEnd--;
+        }
+        if (readEvent.shouldCommit()) {
+            readEvent.bytes = lineEnd;
+            readEvent.commit();
+        }
+        if (lineEnd == 0) {
+            return null;
+        }
+        RequestParseEvent parseEvent = new RequestParseEvent();
+        parseEvent.begin();
+        MessageDto request = decoder.decode(lineEnd);
+        if (parseEvent.shouldCommit()) {
+            parseEvent.action = request != null && request.getAction() != null ? request.getAction().name() : null;
+            parseEvent.bytes = lineEnd;
+            parseEvent.commit();
+        }
+        return request;
+    }
+
+    /**
+     * Encode and write a response, the last message on a connection. Every response to a request which offers
+     * a compression starts with the header line naming the compression of the body, whatever the action or
+     * the status of the response is. The body is serialized straight into the compressing stream, so it is
+     * not buffered as a whole. A response to a connection whose request was not read is written as a plain line
+     *
+     * @param request request from the client or null if the request was not read
+     * @param response response to the client
+     * @param compressionThreshold size in bytes of a response which is compressed if the client accepts a compression
+     * @param os stream of the connection, closed when the response is written
+     * @return CompressingOutputStream with the compression and the sizes of the sent response
+     * @throws IOException if there is an issue with the connection
+     */
+    public static CompressingOutputStream writeResponse(MessageDto request, MessageDto response, int compressionThreshold,
+                                                        OutputStream os) throws IOException {
+        ResponseWriteEvent writeEvent = new ResponseWriteEvent();
+        writeEvent.begin();
+        Compression compression = request != null ? request.getCompression() : null;
+        CompressingOutputStream cos = new CompressingOutputStream(os, compression, compressionThreshold);
+        ResponseEncoder encoder = RESPONSE_ENCODER.get();
+        // the stream is closed also when the encoding fails, so the deflater of a compressed body is always ended
+        try (OutputStream body = cos) {
+            encoder.encode(response, compression == null ? encoder.plainEncoder : encoder.compressedEncoder, body);
+        } catch (IOException | RuntimeException e) {
+            // the serializer may hold a part of the failed response, so it is not reused
+            RESPONSE_ENCODER.remove();
+            throw e;
+        }
+        if (writeEvent.shouldCommit()) {
+            writeEvent.action = request != null && request.getAction() != null ? request.getAction().name() : null;
+            writeEvent.compression = cos.getApplied().name();
+            writeEvent.bytes = cos.getSentBytes();
+            writeEvent.commit();
+        }
+        return cos;
+    }
+
+    /**
+     * Type of the object of a request by its action
+     *
+     * @param action requested action
+     * @return Type of the object
+     */
+    private static Type objectType(Action action) {
+        switch (action) {
+            case ADD_BIRD:
+                return Bird.class;
+            case ADD_SIGHTING:
+                return Sighting.class;
+            case LIST_BIRDS:
+                return BirdsRequest.class;
+            case LIST_SIGHTING:
+                return SightingsRequest.class;
+            case REMOVE:
+            case WATCH:
+                return String.class;
+            default:
+                return Object.class;
+        }
+    }
+}
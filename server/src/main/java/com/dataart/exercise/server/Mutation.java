@@ -0,0 +1,25 @@
+package com.dataart.exercise.server;
+
+import java.io.IOException;
+
+/**
+ * Change of the data store by a request. All the mutations of one bird are applied by one thread
+ * in the sharded mode, so the checks of a mutation and its changes are atomic
+ *
+ * @param <T> result of the mutation
+ * @author Eugene Lapin
+ * @version 1.0
+ * @see com.dataart.exercise.server.DataStore#mutate(String, Mutation)
+ */
+@FunctionalInterface
+public interface Mutation<T> {
+
+    /**
+     * Apply the mutation
+     *
+     * @param context birds and sighting lists to read and change
+     * @return result of the mutation
+     * @throws IOException if the archive of the old sightings cannot be read
+     */
+    T apply(MutationContext context) throws IOException;
+}
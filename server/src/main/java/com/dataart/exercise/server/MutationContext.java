@@ -0,0 +1,71 @@
+package com.dataart.exercise.server;
+
+import com.dataart.exercise.entity.Bird;
+import com.dataart.exercise.entity.Sighting;
+
+import java.util.List;
+
+/**
+ * Birds and sighting lists as seen by a mutation. In the shared mode a mutation changes the stored data at once,
+ * in the sharded mode it changes the copies which the writer publishes after its batch. The changes of the indexes,
+ * of the version and the notifications of the watchers are passed as actions which run when the changed data is visible
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ * @see com.dataart.exercise.server.Mutation
+ */
+public interface MutationContext {
+
+    /**
+     * Current bird by name
+     *
+     * @param birdName name of the bird
+     * @return Bird or null if there is no such bird
+     */
+    Bird getBird(String birdName);
+
+    /**
+     * Add a bird
+     *
+     * @param bird bird to add
+     */
+    void putBird(Bird bird);
+
+    /**
+     * Remove a bird
+     *
+     * @param birdName name of the bird
+     */
+    void removeBird(String birdName);
+
+    /**
+     * Current sightings of a bird
+     *
+     * @param birdName name of the bird
+     * @return List of the sightings or null if the bird has no sightings
+     */
+    List<Sighting> getSightings(String birdName);
+
+    /**
+     * Sightings of a bird to be changed, created if the bird has no sightings
+     *
+     * @param birdName name of the bird
+     * @return modifiable List of the sightings
+     */
+    List<Sighting> sightingsForUpdate(String birdName);
+
+    /**
+     * Remove all the sightings of a bird
+     *
+     * @param birdName name of the bird
+     */
+    void removeSightings(String birdName);
+
+    /**
+     * Run an action when the changes of the mutation are visible to the readers. The actions run in the order
+     * of their mutations, at once in the shared mode and after the batch is published in the sharded mode
+     *
+     * @param action action which depends on the visible changes
+     */
+    void afterPublish(Runnable action);
+}
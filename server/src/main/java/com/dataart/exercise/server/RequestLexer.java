@@ -0,0 +1,174 @@
+package com.dataart.exercise.server;
+
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.parser.JSONLexerBase;
+import com.alibaba.fastjson.parser.JSONToken;
+import com.alibaba.fastjson.parser.SymbolTable;
+import com.alibaba.fastjson.util.IOUtils;
+
+import java.math.BigDecimal;
+
+/**
+ * Lexer of fastjson over a char array. Unlike JSONScanner, which copies its input into a String,
+ * it reads the characters decoded into the buffer of the thread and is reset for every request,
+ * so a thread parses all its requests with one lexer and one parser
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ * @see com.dataart.exercise.server.MessageCodec
+ */
+final class RequestLexer extends JSONLexerBase {
+
+    /**
+     * Characters of the request
+     */
+    private char[] text = new char[0];
+    /**
+     * Number of the characters of the request
+     */
+    private int len;
+
+    /**
+     * Constructor for RequestLexer, the lexer is empty until reset. Its first token is read by the parser
+     *
+     * @param features parser features
+     */
+    RequestLexer(int features) {
+        super(features);
+        this.bp = -1;
+        next();
+    }
+
+    /**
+     * Start lexing a request and read its first token
+     *
+     * @param text characters of the request, not copied
+     * @param len number of the characters of the request
+     */
+    void reset(char[] text, int len) {
+        this.text = text;
+        this.len = len;
+        this.bp = -1;
+        this.pos = 0;
+        this.sp = 0;
+        this.np = 0;
+        this.hasSpecial = false;
+        this.matchStat = UNKNOWN;
+        // no token is read yet, as in a new lexer
+        this.token = 0;
+        next();
+        if (ch == 65279) {
+            // byte order mark
+            next();
+        }
+        nextToken();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return index >= len ? EOI : text[index];
+    }
+
+    @Override
+    public char next() {
+        int index = ++bp;
+        return ch = index >= len ? EOI : text[index];
+    }
+
+    @Override
+    public int indexOf(char ch, int startIndex) {
+        for (int i = startIndex; i < len; i++) {
+            if (text[i] == ch) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String addSymbol(int offset, int len, int hash, SymbolTable symbolTable) {
+        return symbolTable.addSymbol(text, offset, len, hash);
+    }
+
+    @Override
+    protected void arrayCopy(int srcPos, char[] dest, int destPos, int length) {
+        System.arraycopy(text, srcPos, dest, destPos, length);
+    }
+
+    @Override
+    protected void copyTo(int offset, int count, char[] dest) {
+        System.arraycopy(text, offset, dest, 0, count);
+    }
+
+    @Override
+    protected boolean charArrayCompare(char[] chars) {
+        if (bp + chars.length > len) {
+            return false;
+        }
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] != text[bp + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public byte[] bytesValue() {
+        if (token != JSONToken.HEX) {
+            return IOUtils.decodeBase64(text, np + 1, sp);
+        }
+        if (sp % 2 != 0) {
+            throw new JSONException("illegal state. " + sp);
+        }
+        byte[] bytes = new byte[sp / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            char high = text[np + 1 + i * 2];
+            char low = text[np + 2 + i * 2];
+            bytes[i] = (byte) (Character.digit(high, 16) << 4 | Character.digit(low, 16));
+        }
+        return bytes;
+    }
+
+    @Override
+    public String stringVal() {
+        return hasSpecial ? new String(sbuf, 0, sp) : subString(np + 1, sp);
+    }
+
+    @Override
+    public String subString(int offset, int count) {
+        return new String(text, offset, count);
+    }
+
+    @Override
+    protected char[] sub_chars(int offset, int count) {
+        char[] chars = new char[count];
+        System.arraycopy(text, offset, chars, 0, count);
+        return chars;
+    }
+
+    @Override
+    public String numberString() {
+        return subString(np, numberLength());
+    }
+
+    @Override
+    public BigDecimal decimalValue() {
+        return new BigDecimal(text, np, numberLength());
+    }
+
+    @Override
+    public boolean isEOF() {
+        return bp == len || ch == EOI && bp + 1 == len;
+    }
+
+    /**
+     * Length of the current number without its type suffix
+     *
+     * @return number of the characters of the number
+     */
+    private int numberLength() {
+        char last = charAt(np + sp - 1);
+        return last == 'L' || last == 'S' || last == 'B' || last == 'F' || last == 'D' ? sp - 1 : sp;
+    }
+}
@@ -0,0 +1,116 @@
+package com.dataart.exercise.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for many producers and a single consumer. Every slot has a sequence which tells
+ * whether the slot is free for the producer of a position or filled for the consumer, so producers
+ * only compete with a CAS on the tail and never block each other
+ *
+ * @param <E> type of the elements
+ * @author Eugene Lapin
+ * @version 1.0
+ */
+class RingBuffer<E> {
+
+    /**
+     * Elements by slot
+     */
+    private final AtomicReferenceArray<E> slots;
+    /**
+     * Sequences by slot: the position for which the slot is free, or that position plus one when the slot is filled
+     */
+    private final AtomicLongArray sequences;
+    /**
+     * Mask of a slot index, the capacity is a power of two
+     */
+    private final int mask;
+    /**
+     * Next position to fill
+     */
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * Next position to take, changed only by the consumer
+     */
+    private volatile long head;
+
+    /**
+     * Constructor for RingBuffer
+     *
+     * @param capacity minimum number of the slots, rounded up to a power of two
+     */
+    RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Put an element if there is a free slot
+     *
+     * @param element element to put
+     * @return FALSE if the buffer is full
+     */
+    boolean offer(E element) {
+        long position;
+        int index;
+        while (true) {
+            position = tail.get();
+            index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+        slots.set(index, element);
+        sequences.set(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Take the next element. Called only by the consumer thread
+     *
+     * @return the element or null if the buffer is empty
+     */
+    E poll() {
+        long position = head;
+        int index = (int) position & mask;
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        E element = slots.get(index);
+        slots.set(index, null);
+        sequences.set(index, position + mask + 1);
+        head = position + 1;
+        return element;
+    }
+
+    /**
+     * Check if the consumer has nothing to take. Called only by the consumer thread
+     *
+     * @return TRUE if the next slot is not filled yet
+     */
+    boolean isEmpty() {
+        long position = head;
+        return sequences.get((int) position & mask) != position + 1;
+    }
+
+    /**
+     * Number of the elements in the buffer, approximate while the producers are active
+     *
+     * @return number of the elements
+     */
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+}
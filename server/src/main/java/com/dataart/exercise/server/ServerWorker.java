@@ -1,22 +1,33 @@
 package com.dataart.exercise.server;
 
-import com.alibaba.fastjson.JSON;
+import com.dataart.exercise.ResponseStatus;
+import com.dataart.exercise.archive.SegmentStore;
+import com.dataart.exercise.dto.BirdsDelta;
 import com.dataart.exercise.dto.MessageDto;
 import com.dataart.exercise.entity.Bird;
 import com.dataart.exercise.entity.Sighting;
+import com.dataart.exercise.event.HandleMessageEvent;
+import com.dataart.exercise.event.SightingQueryEvent;
+import com.dataart.exercise.index.BirdAttributeIndex;
+import com.dataart.exercise.index.BirdNameIndex;
+import com.dataart.exercise.index.LocationIndex;
+import com.dataart.exercise.request.BirdsRequest;
 import com.dataart.exercise.request.SightingsRequest;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
 import java.net.Socket;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
 
@@ -31,14 +42,46 @@ public class ServerWorker implements Callable<Boolean> {
      * Socket for current server worker
      */
     private final Socket s;
+    /**
+     * Request read from the socket
+     */
+    private final MessageDto request;
+    /**
+     * Link to the in-memory storage with its loading state
+     */
+    private final DataStore dataStore;
     /**
      * Link to the in-memory storage for the birds
      */
     private final Map<String, Bird> birds;
     /**
-     * Link to the in-memory storage for the sightings
+     * Link to the index of the sightings by location
+     */
+    private final LocationIndex locationIndex;
+    /**
+     * Link to the index of the bird names
+     */
+    private final BirdNameIndex birdNameIndex;
+    /**
+     * Link to the index of the birds by weight, height and color
+     */
+    private final BirdAttributeIndex birdAttributeIndex;
+    /**
+     * Link to the archive of the old sightings
+     */
+    private final SegmentStore segmentStore;
+    /**
+     * Link to the dispatcher of the sightings to the watching clients
      */
-    private final Map<String, List<Sighting>> sightings;
+    private final WatchDispatcher watchDispatcher;
+    /**
+     * Link to the executor of the sighting queries
+     */
+    private final SightingQueryExecutor queryExecutor;
+    /**
+     * Size in bytes of a response which is compressed if the client accepts a compression
+     */
+    private final int compressionThreshold;
     /**
      * If TRUE stop the server
      */
@@ -48,13 +91,25 @@ public class ServerWorker implements Callable<Boolean> {
      * Constructor for ServiceWorker creation
      *
      * @param s socket
-     * @param birds map of the birds
-     * @param sightings map of the sightings
+     * @param request request read from the socket
+     * @param dataStore in-memory storage
+     * @param watchDispatcher dispatcher of the sightings to the watching clients
+     * @param queryExecutor executor of the sighting queries
+     * @param compressionThreshold size in bytes of a response which is compressed if the client accepts a compression
      */
-    public ServerWorker(Socket s, Map<String, Bird> birds, Map<String, List<Sighting>> sightings){
+    public ServerWorker(Socket s, MessageDto request, DataStore dataStore, WatchDispatcher watchDispatcher,
+                        SightingQueryExecutor queryExecutor, int compressionThreshold){
         this.s = s;
-        this.birds = birds;
-        this.sightings = sightings;
+        this.request = request;
+        this.dataStore = dataStore;
+        this.birds = dataStore.getBirds();
+        this.locationIndex = dataStore.getLocationIndex();
+        this.birdNameIndex = dataStore.getBirdNameIndex();
+        this.birdAttributeIndex = dataStore.getBirdAttributeIndex();
+        this.segmentStore = dataStore.getSegmentStore();
+        this.watchDispatcher = watchDispatcher;
+        this.queryExecutor = queryExecutor;
+        this.compressionThreshold = compressionThreshold;
     }
 
     /**
@@ -64,18 +119,28 @@ public class ServerWorker implements Callable<Boolean> {
      * @throws Exception
      */
     public Boolean call() throws Exception {
-        try (BufferedReader is = new BufferedReader(new InputStreamReader(s.getInputStream()));
-             PrintWriter os = new PrintWriter(s.getOutputStream())) {
-            isStoppingServer = false;
-            String line = is.readLine();
-            MessageDto request = JSON.parseObject(line, MessageDto.class);
-            if (request == null) {
-                return false;
+        isStoppingServer = false;
+        try {
+            MessageDto response;
+            HandleMessageEvent handleEvent = new HandleMessageEvent();
+            handleEvent.begin();
+            try {
+                response = handleMessage(request);
+            } catch (IllegalStateException | IOException e) {
+                response = new MessageDto("FAILURE: " + e.getMessage());
+            }
+            if (handleEvent.shouldCommit()) {
+                handleEvent.action = request.getAction().name();
+                handleEvent.resultCount = resultCount(response);
+                handleEvent.comment = response.getComment();
+                handleEvent.commit();
+            }
+            if (response.getVersion() == null) {
+                response.setVersion(dataStore.getVersion());
             }
-            MessageDto response = handleMessage(request);
-            os.println(JSON.toJSONString(response));
-            os.flush();
-            System.out.println("Response to Client  :  " + JSON.toJSONString(response));
+            CompressingOutputStream cos = MessageCodec.writeResponse(request, response, compressionThreshold, s.getOutputStream());
+            System.out.println("Response to Client  :  " + (response.getComment() != null ? response.getComment() : response.getAction() != null ? response.getAction() : response.getStatus())
+                    + " " + cos.summary());
         } finally {
             try{
                 System.out.println("Connection Closing..");
@@ -91,61 +156,295 @@ public class ServerWorker implements Callable<Boolean> {
         return isStoppingServer;
     }
 
+    /**
+     * Number of the birds or sightings in a response
+     *
+     * @param response response to the client
+     * @return number of the returned entities, 0 if the response has no list
+     */
+    private static int resultCount(MessageDto response) {
+        if (response.getObject() instanceof Collection) {
+            return ((Collection<?>) response.getObject()).size();
+        }
+        if (response.getObject() instanceof BirdsDelta) {
+            BirdsDelta delta = (BirdsDelta) response.getObject();
+            return delta.getBirds().size() + delta.getRemovedNames().size();
+        }
+        return 0;
+    }
+
     /**
      * Handle a request from a client and prepare a response
      *
      * @param messageDto from the client
      * @return MessageDto response to the client
+     * @throws InterruptedException if interrupted while waiting for the data loading
+     * @throws IOException if the archive of the old sightings cannot be read or written
      * @see com.dataart.exercise.dto.MessageDto
      */
-    private MessageDto handleMessage(MessageDto messageDto) {
+    private MessageDto handleMessage(MessageDto messageDto) throws InterruptedException, IOException {
         Object object = messageDto.getObject();
         switch (messageDto.getAction()) {
             case ADD_BIRD:
-                Bird bird = JSON.parseObject(object.toString(), Bird.class);
-                if (birds.containsKey(bird.getName())) {
-                    return new MessageDto("FAILURE: Bird " + bird.getName() + " already exists");
-                } else {
-                    birds.put(bird.getName(), bird);
-                    return new MessageDto("Bird " + bird.getName() + " successfully added to the database");
-                }
+                dataStore.awaitBirds();
+                Bird bird = (Bird) object;
+                return dataStore.mutate(bird.getName(), context -> addBird(bird, context));
             case ADD_SIGHTING:
-                Sighting sighting = JSON.parseObject(object.toString(), Sighting.class);
-                if (!birds.containsKey(sighting.getBirdName())) {
-                    return new MessageDto("FAILURE: Sighting was not added because Bird " + sighting.getBirdName() + " does not exist");
-                }
-                List<Sighting> sightingList = sightings.getOrDefault(sighting.getBirdName(), new ArrayList());
-                if (sightingList.contains(sighting)) {
-                    return new MessageDto("FAILURE: Sighting with such parameters already exists");
-                } else {
-                    sightingList.add(sighting);
-                    sightings.putIfAbsent(sighting.getBirdName(), sightingList);
-                    return new MessageDto("Sighting for " + sighting.getBirdName() + " successfully added to the database");
-                }
+                Sighting sighting = (Sighting) object;
+                dataStore.awaitBirds();
+                dataStore.awaitSightings(sighting.getBirdName());
+                // the archive is read before the mutation, so the writer of the shard does not wait for the disk
+                long archiveGeneration = segmentStore.getGeneration();
+                boolean isArchived = segmentStore.contains(sighting);
+                return dataStore.mutate(sighting.getBirdName(), context -> addSighting(sighting, isArchived, archiveGeneration, context));
             case LIST_BIRDS:
-                return new MessageDto(messageDto.getAction(), birds.values());
+                dataStore.awaitBirds();
+                return listBirds(messageDto);
             case LIST_SIGHTING:
-                SightingsRequest sightingsRequest = JSON.parseObject(object.toString(), SightingsRequest.class);
+                SightingsRequest sightingsRequest = (SightingsRequest) object;
+                long version = dataStore.getVersion();
+                if (messageDto.getIfNewerThan() != null && messageDto.getIfNewerThan() == version) {
+                    return versioned(new MessageDto(ResponseStatus.NOT_MODIFIED, null), version);
+                }
                 try {
-                    sightingList = sightings.values().stream().flatMap(list -> list.stream())
-                            .filter(s -> s.getBirdName().matches(sightingsRequest.getBirdNamePattern())
-                                    && s.getSightingDateTime().isAfter(LocalDateTime.of(sightingsRequest.getSightingDateStart(), LocalTime.MIN))
-                                    && s.getSightingDateTime().isBefore(LocalDateTime.of(sightingsRequest.getSightingDateEnd(), LocalTime.MAX)))
-                            .collect(Collectors.toList());
-                    return new MessageDto(messageDto.getAction(), sightingList);
+                    Pattern birdNamePattern = Pattern.compile(sightingsRequest.getBirdNamePattern());
+                    Predicate<Sighting> inPeriod = s -> s.getSightingDateTime().isAfter(LocalDateTime.of(sightingsRequest.getSightingDateStart(), LocalTime.MIN))
+                            && s.getSightingDateTime().isBefore(LocalDateTime.of(sightingsRequest.getSightingDateEnd(), LocalTime.MAX));
+                    List<Sighting> sightingList = findSightings(sightingsRequest, birdNamePattern, inPeriod);
+                    return versioned(new MessageDto(messageDto.getAction(), sightingList), version);
                 } catch (PatternSyntaxException e) {
                     return new MessageDto("Pattern error: " + e.getMessage());
                 }
             case REMOVE:
-                if (!birds.containsKey(object)) {
-                    return new MessageDto("FAILURE: Bird " + object + " does not exist");
-                }
-                birds.remove(object);
-                sightings.remove(object);
-                return new MessageDto("Bird " + object + " successfully removed");
+                String birdName = object.toString();
+                dataStore.awaitBirds();
+                dataStore.awaitSightings(birdName);
+                MessageDto response = dataStore.mutate(birdName, context -> removeBird(birdName, context));
+                // the archive is rewritten after the mutation, so the writer of the shard does not wait for the disk
+                dataStore.removeArchived(birdName);
+                return response;
             case QUIT:
                 isStoppingServer = true;
         }
         return new MessageDto();
     }
+
+    /**
+     * Add a bird if there is no bird with the same name
+     *
+     * @param bird bird to add
+     * @param context birds and sighting lists of the mutation
+     * @return MessageDto response to the client
+     */
+    private MessageDto addBird(Bird bird, MutationContext context) {
+        if (context.getBird(bird.getName()) != null) {
+            return new MessageDto("FAILURE: Bird " + bird.getName() + " already exists");
+        } else if (bird.getWeight() != null && !(bird.getWeight() >= 0) || bird.getHeight() != null && !(bird.getHeight() >= 0)) {
+            return new MessageDto("FAILURE: Weight and height of a bird should not be negative");
+        }
+        context.putBird(bird);
+        context.afterPublish(() -> {
+            birdNameIndex.add(bird.getName());
+            birdAttributeIndex.add(bird);
+            dataStore.birdChanged(bird.getName());
+        });
+        return new MessageDto("Bird " + bird.getName() + " successfully added to the database");
+    }
+
+    /**
+     * Add a sighting of an existing bird if there is no sighting with the same parameters. The archive is checked
+     * before the mutation and checked again only if it was changed since then
+     *
+     * @param sighting sighting to add
+     * @param isArchived TRUE if the sighting was found in the archive before the mutation
+     * @param archiveGeneration number of the changes of the archive when it was checked
+     * @param context birds and sighting lists of the mutation
+     * @return MessageDto response to the client
+     * @throws IOException if the archive of the old sightings cannot be read
+     */
+    private MessageDto addSighting(Sighting sighting, boolean isArchived, long archiveGeneration,
+                                   MutationContext context) throws IOException {
+        if (context.getBird(sighting.getBirdName()) == null) {
+            return new MessageDto("FAILURE: Sighting was not added because Bird " + sighting.getBirdName() + " does not exist");
+        }
+        List<Sighting> sightingList = context.sightingsForUpdate(sighting.getBirdName());
+        synchronized (sightingList) {
+            if (sightingList.contains(sighting) || isArchived
+                    || segmentStore.getGeneration() != archiveGeneration && segmentStore.contains(sighting)) {
+                return new MessageDto("FAILURE: Sighting with such parameters already exists");
+            }
+            sightingList.add(sighting);
+        }
+        context.afterPublish(() -> {
+            locationIndex.add(sighting);
+            dataStore.changed();
+            watchDispatcher.publish(sighting);
+        });
+        return new MessageDto("Sighting for " + sighting.getBirdName() + " successfully added to the database");
+    }
+
+    /**
+     * Remove a bird with its sightings. The archived sightings are removed after the mutation
+     *
+     * @param birdName name of the bird
+     * @param context birds and sighting lists of the mutation
+     * @return MessageDto response to the client
+     */
+    private MessageDto removeBird(String birdName, MutationContext context) {
+        if (context.getBird(birdName) == null) {
+            return new MessageDto("FAILURE: Bird " + birdName + " does not exist");
+        }
+        List<Sighting> sightingList = context.getSightings(birdName);
+        context.removeBird(birdName);
+        context.removeSightings(birdName);
+        context.afterPublish(() -> {
+            locationIndex.removeAll(sightingList != null ? sightingList : Collections.emptyList());
+            birdNameIndex.remove(birdName);
+            birdAttributeIndex.remove(birdName);
+            dataStore.birdChanged(birdName);
+        });
+        return new MessageDto("Bird " + birdName + " successfully removed");
+    }
+
+    /**
+     * Bird list for a request. The version is read before the list, so the list reflects at least that version.
+     * If the client knows the current version then the list is not sent, and if it knows a recent version
+     * of the whole list then only the birds changed since that version are sent
+     *
+     * @param messageDto request from the client
+     * @return MessageDto response to the client
+     */
+    private MessageDto listBirds(MessageDto messageDto) {
+        long version = dataStore.getVersion();
+        Long ifNewerThan = messageDto.getIfNewerThan();
+        if (ifNewerThan != null && ifNewerThan == version) {
+            return versioned(new MessageDto(ResponseStatus.NOT_MODIFIED, null), version);
+        }
+        if (messageDto.getObject() instanceof BirdsRequest) {
+            return versioned(new MessageDto(messageDto.getAction(), birdAttributeIndex.find((BirdsRequest) messageDto.getObject())), version);
+        }
+        Set<String> changedNames = ifNewerThan != null ? dataStore.birdChangesSince(ifNewerThan, version) : null;
+        if (changedNames == null) {
+            return versioned(new MessageDto(messageDto.getAction(), birds.values()), version);
+        }
+        BirdsDelta delta = new BirdsDelta(new ArrayList<>(), new ArrayList<>());
+        for (String name : changedNames) {
+            Bird bird = birds.get(name);
+            if (bird != null) {
+                delta.getBirds().add(bird);
+            } else {
+                delta.getRemovedNames().add(name);
+            }
+        }
+        MessageDto response = versioned(new MessageDto(messageDto.getAction(), delta), version);
+        response.setStatus(ResponseStatus.DELTA);
+        return response;
+    }
+
+    /**
+     * Set the version of the data to a response
+     *
+     * @param response response to the client
+     * @param version version of the data reflected by the response
+     * @return the same response
+     */
+    private static MessageDto versioned(MessageDto response, long version) {
+        response.setVersion(version);
+        return response;
+    }
+
+    /**
+     * Sightings of the matching birds which satisfy a request. If a location is requested then only
+     * the posting list of that location within the requested period is read, otherwise the matching
+     * bird names are looked up in the name index and only their sightings are filtered, in parallel
+     * if there are many of them. Waits until the sightings of the matching birds are loaded,
+     * or all the sightings for a location request. The archived sightings are read only from the segments
+     * whose period and bird names may match the request. If the archive was changed meanwhile, the sightings
+     * may have been moved from memory to the archive during the query, so the query is repeated
+     *
+     * @param sightingsRequest request from the client
+     * @param birdNamePattern compiled bird name pattern of the request
+     * @param inPeriod condition on the date of a sighting
+     * @return List of the matching sightings
+     * @throws InterruptedException if interrupted while waiting for the data loading
+     * @throws IOException if the archive of the old sightings cannot be read
+     */
+    private List<Sighting> findSightings(SightingsRequest sightingsRequest, Pattern birdNamePattern,
+                                         Predicate<Sighting> inPeriod) throws InterruptedException, IOException {
+        SightingQueryEvent queryEvent = new SightingQueryEvent();
+        queryEvent.begin();
+        dataStore.awaitBirds();
+        LocalDateTime from = LocalDateTime.of(sightingsRequest.getSightingDateStart(), LocalTime.MIN);
+        LocalDateTime to = LocalDateTime.of(sightingsRequest.getSightingDateEnd(), LocalTime.MAX);
+        String location = LocationIndex.normalize(sightingsRequest.getLocation());
+        if (location == null) {
+            List<String> names = birdNameIndex.find(birdNamePattern);
+            for (String name : names) {
+                dataStore.awaitSightings(name);
+            }
+            Set<String> nameSet = new HashSet<>(names);
+            while (true) {
+                long archiveGeneration = segmentStore.getGeneration();
+                List<List<Sighting>> sightingGroups = names.stream()
+                        .map(dataStore::getSightingsSnapshot)
+                        .collect(Collectors.toList());
+                List<Sighting> result = queryExecutor.filter(sightingGroups, skipArchiving(inPeriod));
+                List<Sighting> archived = segmentStore.find(nameSet::contains, from, to, inPeriod);
+                if (segmentStore.getGeneration() == archiveGeneration) {
+                    result.addAll(archived);
+                    commitQueryEvent(queryEvent, sightingsRequest, names.size(), result.size(), archived.size());
+                    return result;
+                }
+            }
+        }
+        dataStore.awaitAll();
+        while (true) {
+            long archiveGeneration = segmentStore.getGeneration();
+            Collection<Sighting> postingList = locationIndex.find(sightingsRequest.getLocation(),
+                    sightingsRequest.getSightingDateStart(), sightingsRequest.getSightingDateEnd());
+            List<Sighting> result = postingList.stream()
+                    .filter(skipArchiving(s -> birdNamePattern.matcher(s.getBirdName()).matches() && inPeriod.test(s)))
+                    .collect(Collectors.toList());
+            List<Sighting> archived = segmentStore.find(name -> birdNamePattern.matcher(name).matches(), from, to,
+                    s -> location.equals(LocationIndex.normalize(s.getLocation())) && inPeriod.test(s));
+            if (segmentStore.getGeneration() == archiveGeneration) {
+                result.addAll(archived);
+                commitQueryEvent(queryEvent, sightingsRequest, 0, result.size(), archived.size());
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Condition on the sightings in memory which skips the sightings already written to the archive
+     * by an archiving run in progress, so they are found only once
+     *
+     * @param filter condition on a sighting
+     * @return Predicate on a sighting in memory
+     */
+    private Predicate<Sighting> skipArchiving(Predicate<Sighting> filter) {
+        Set<Sighting> archiving = segmentStore.getArchiving();
+        return archiving.isEmpty() ? filter : filter.and(s -> !archiving.contains(s));
+    }
+
+    /**
+     * Commit a sighting query event if it is enabled and long enough to be recorded
+     *
+     * @param queryEvent started event
+     * @param sightingsRequest request from the client
+     * @param matchedBirds number of the birds found by the name pattern
+     * @param resultCount number of the found sightings
+     * @param archivedCount number of the found sightings read from the archive
+     */
+    private static void commitQueryEvent(SightingQueryEvent queryEvent, SightingsRequest sightingsRequest,
+                                         int matchedBirds, int resultCount, int archivedCount) {
+        if (queryEvent.shouldCommit()) {
+            queryEvent.birdNamePattern = sightingsRequest.getBirdNamePattern();
+            queryEvent.location = sightingsRequest.getLocation();
+            queryEvent.matchedBirds = matchedBirds;
+            queryEvent.resultCount = resultCount;
+            queryEvent.archivedCount = archivedCount;
+            queryEvent.commit();
+        }
+    }
 }
@@ -0,0 +1,466 @@
+package com.dataart.exercise.server;
+
+import com.dataart.exercise.entity.Bird;
+import com.dataart.exercise.entity.Sighting;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+/**
+ * Writer of the mutations in the sharded mode. The birds are split into shards by name, and every shard has
+ * one writer thread which takes the mutations from a lock-free ring buffer. The writer applies a batch of
+ * mutations to copies of the changed birds and sighting lists, so nothing of the batch is visible while it is
+ * applied, and the changes of a failed mutation are undone. Then it publishes the birds and the copies as immutable
+ * lists, runs the actions of the mutations which update the indexes, increase the version and notify the watchers,
+ * and only then answers the waiting requests. So the mutations of a bird are linearizable, a version is increased
+ * only when its changes are visible, and the readers see complete lists without locks. The publication of a batch
+ * is not atomic across the storages and the indexes: a reader may see a part of a batch which is being published
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ * @see com.dataart.exercise.server.Mutation
+ */
+public class ShardedWriter {
+
+    /**
+     * Number of the waiting mutations in the ring buffer of a shard
+     */
+    private static final int RING_CAPACITY = 1024;
+    /**
+     * Maximum number of the mutations applied in one batch
+     */
+    private static final int BATCH_LIMIT = 256;
+    /**
+     * Time in nanoseconds a writer sleeps without mutations before it checks its buffer again
+     */
+    private static final long IDLE_PARK = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * Storage of the birds where the birds are published
+     */
+    private final Map<String, Bird> birds;
+    /**
+     * Storage of the sightings where the lists are published
+     */
+    private final Map<String, List<Sighting>> sightings;
+    /**
+     * Shards of the birds
+     */
+    private final Shard[] shards;
+    /**
+     * Number of the applied batches
+     */
+    private final AtomicLong batches = new AtomicLong();
+    /**
+     * Number of the applied mutations
+     */
+    private final AtomicLong mutations = new AtomicLong();
+    /**
+     * If FALSE the writers finish the waiting mutations and stop
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Mutation waiting for its writer
+     *
+     * @param <T> result of the mutation
+     */
+    private static class Command<T> extends CompletableFuture<T> {
+        private final Mutation<T> mutation;
+        private T result;
+        private Exception failure;
+
+        private Command(Mutation<T> mutation) {
+            this.mutation = mutation;
+        }
+
+        private boolean apply(MutationContext context) {
+            try {
+                result = mutation.apply(context);
+                return true;
+            } catch (IOException | RuntimeException e) {
+                // a failed mutation must not stop the writer of the shard
+                failure = e;
+                return false;
+            }
+        }
+
+        private void finish() {
+            if (failure != null) {
+                completeExceptionally(failure);
+            } else {
+                complete(result);
+            }
+        }
+    }
+
+    /**
+     * Birds and copies of the sighting lists changed by a batch with the actions to run after its publication
+     */
+    private class Batch implements MutationContext {
+
+        /**
+         * Changed birds by name, null for a removed bird
+         */
+        private final Map<String, Bird> changedBirds = new HashMap<>();
+        /**
+         * Changed lists by bird name, null for a removed list
+         */
+        private final Map<String, List<Sighting>> copies = new HashMap<>();
+        /**
+         * Actions of the mutations in their order
+         */
+        private final List<Runnable> actions = new ArrayList<>();
+        /**
+         * Inverse changes of the current mutation in their order
+         */
+        private final List<Runnable> undoLog = new ArrayList<>();
+
+        @Override
+        public Bird getBird(String birdName) {
+            return changedBirds.containsKey(birdName) ? changedBirds.get(birdName) : birds.get(birdName);
+        }
+
+        @Override
+        public void putBird(Bird bird) {
+            saveEntry(changedBirds, bird.getName());
+            changedBirds.put(bird.getName(), bird);
+        }
+
+        @Override
+        public void removeBird(String birdName) {
+            saveEntry(changedBirds, birdName);
+            changedBirds.put(birdName, null);
+        }
+
+        @Override
+        public List<Sighting> getSightings(String birdName) {
+            return copies.containsKey(birdName) ? copies.get(birdName) : sightings.get(birdName);
+        }
+
+        @Override
+        public List<Sighting> sightingsForUpdate(String birdName) {
+            List<Sighting> copy = copies.get(birdName);
+            if (copy == null) {
+                List<Sighting> published = copies.containsKey(birdName) ? null : sightings.get(birdName);
+                copy = published == null ? new ArrayList<>() : new ArrayList<>(published);
+                saveEntry(copies, birdName);
+                copies.put(birdName, copy);
+            }
+            return new UndoableList(copy, undoLog);
+        }
+
+        @Override
+        public void removeSightings(String birdName) {
+            saveEntry(copies, birdName);
+            copies.put(birdName, null);
+        }
+
+        @Override
+        public void afterPublish(Runnable action) {
+            actions.add(action);
+            undoLog.add(() -> actions.remove(actions.size() - 1));
+        }
+
+        /**
+         * Apply a mutation to the batch. If it fails, its changes are undone in the reverse order
+         *
+         * @param command command with the mutation
+         */
+        private void apply(Command<?> command) {
+            if (!command.apply(this)) {
+                for (int i = undoLog.size() - 1; i >= 0; i--) {
+                    undoLog.get(i).run();
+                }
+            }
+            undoLog.clear();
+        }
+
+        /**
+         * Log how to restore an entry of the batch before it is changed
+         *
+         * @param changes birds or lists of the batch
+         * @param birdName name of the bird of the entry
+         * @param <V> bird or list
+         */
+        private <V> void saveEntry(Map<String, V> changes, String birdName) {
+            if (changes.containsKey(birdName)) {
+                V previous = changes.get(birdName);
+                undoLog.add(() -> changes.put(birdName, previous));
+            } else {
+                undoLog.add(() -> changes.remove(birdName));
+            }
+        }
+
+        /**
+         * Publish the changed birds and the changed lists as immutable lists, then run the actions
+         */
+        private void publish() {
+            for (Map.Entry<String, Bird> bird : changedBirds.entrySet()) {
+                if (bird.getValue() == null) {
+                    birds.remove(bird.getKey());
+                } else {
+                    birds.put(bird.getKey(), bird.getValue());
+                }
+            }
+            for (Map.Entry<String, List<Sighting>> copy : copies.entrySet()) {
+                if (copy.getValue() == null) {
+                    sightings.remove(copy.getKey());
+                } else {
+                    sightings.put(copy.getKey(), Collections.unmodifiableList(copy.getValue()));
+                }
+            }
+            for (Runnable action : actions) {
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    // a failed action must not stop the writer of the shard
+                    System.err.println("Mutation action error: " + e);
+                }
+            }
+            changedBirds.clear();
+            copies.clear();
+            actions.clear();
+        }
+    }
+
+    /**
+     * Sighting list of a batch which logs how to undo every change made through it
+     */
+    private static class UndoableList extends AbstractList<Sighting> implements RandomAccess {
+
+        /**
+         * Changed list
+         */
+        private final List<Sighting> list;
+        /**
+         * Inverse changes of the current mutation
+         */
+        private final List<Runnable> undoLog;
+
+        /**
+         * Constructor for UndoableList
+         *
+         * @param list changed list
+         * @param undoLog inverse changes of the current mutation
+         */
+        private UndoableList(List<Sighting> list, List<Runnable> undoLog) {
+            this.list = list;
+            this.undoLog = undoLog;
+        }
+
+        @Override
+        public Sighting get(int index) {
+            return list.get(index);
+        }
+
+        @Override
+        public int size() {
+            return list.size();
+        }
+
+        @Override
+        public Sighting set(int index, Sighting sighting) {
+            Sighting previous = list.set(index, sighting);
+            undoLog.add(() -> list.set(index, previous));
+            return previous;
+        }
+
+        @Override
+        public void add(int index, Sighting sighting) {
+            list.add(index, sighting);
+            modCount++;
+            undoLog.add(() -> list.remove(index));
+        }
+
+        @Override
+        public Sighting remove(int index) {
+            Sighting previous = list.remove(index);
+            modCount++;
+            undoLog.add(() -> list.add(index, previous));
+            return previous;
+        }
+
+        @Override
+        public boolean removeIf(Predicate<? super Sighting> filter) {
+            // the bulk removal is undone from a copy rather than element by element
+            List<Sighting> previous = new ArrayList<>(list);
+            if (!list.removeIf(filter)) {
+                return false;
+            }
+            modCount++;
+            undoLog.add(() -> {
+                list.clear();
+                list.addAll(previous);
+            });
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            removeIf(sighting -> true);
+        }
+    }
+
+    /**
+     * Shard with its ring buffer and writer thread
+     */
+    private class Shard implements Runnable {
+
+        private final RingBuffer<Command<?>> ring = new RingBuffer<>(RING_CAPACITY);
+        private final Thread thread;
+        /**
+         * Set while the writer sleeps, so a producer wakes it up
+         */
+        private volatile boolean sleeping;
+        /**
+         * Set when the writer applied its last batch, the commands put after that are failed
+         */
+        private volatile boolean stopped;
+
+        private Shard(int index) {
+            thread = new Thread(this, "shard-writer-" + index);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<Command<?>> commands = new ArrayList<>(BATCH_LIMIT);
+            Batch batch = new Batch();
+            while (running || !ring.isEmpty()) {
+                Command<?> command;
+                while (commands.size() < BATCH_LIMIT && (command = ring.poll()) != null) {
+                    commands.add(command);
+                }
+                if (commands.isEmpty()) {
+                    sleeping = true;
+                    if (ring.isEmpty() && running) {
+                        LockSupport.parkNanos(this, IDLE_PARK);
+                    }
+                    sleeping = false;
+                    continue;
+                }
+                for (Command<?> next : commands) {
+                    batch.apply(next);
+                }
+                batch.publish();
+                commands.forEach(Command::finish);
+                batches.incrementAndGet();
+                mutations.addAndGet(commands.size());
+                commands.clear();
+            }
+            stopped = true;
+            Command<?> late;
+            while ((late = ring.poll()) != null) {
+                late.completeExceptionally(new IllegalStateException("Server is shutting down"));
+            }
+        }
+
+        /**
+         * Put a command to the ring buffer, waiting while the buffer is full, and wake up the writer.
+         * A command put after the writer stopped is failed, so its caller never waits forever
+         *
+         * @param command command to put
+         */
+        private void submit(Command<?> command) {
+            while (!ring.offer(command)) {
+                if (!running) {
+                    throw new IllegalStateException("Server is shutting down");
+                }
+                LockSupport.unpark(thread);
+                Thread.yield();
+            }
+            if (stopped) {
+                // the writer may have missed the command after its last poll, completing it twice is harmless
+                command.completeExceptionally(new IllegalStateException("Server is shutting down"));
+            }
+            if (sleeping) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    /**
+     * Constructor for ShardedWriter
+     *
+     * @param shardCount number of the shards
+     * @param birds storage of the birds where the birds are published
+     * @param sightings storage of the sightings where the lists are published
+     */
+    public ShardedWriter(int shardCount, Map<String, Bird> birds, Map<String, List<Sighting>> sightings) {
+        this.birds = birds;
+        this.sightings = sightings;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+            shards[i].thread.start();
+        }
+    }
+
+    /**
+     * Apply a mutation by the writer of the shard of a bird and wait for its result
+     *
+     * @param birdName name of the bird changed by the mutation
+     * @param mutation mutation to apply
+     * @param <T> result of the mutation
+     * @return result of the mutation
+     * @throws IOException if the mutation failed to read or write the archive
+     * @throws InterruptedException if interrupted while waiting for the result
+     */
+    public <T> T submit(String birdName, Mutation<T> mutation) throws IOException, InterruptedException {
+        if (!running) {
+            throw new IllegalStateException("Server is shutting down");
+        }
+        Command<T> command = new Command<>(mutation);
+        shards[(birdName.hashCode() & Integer.MAX_VALUE) % shards.length].submit(command);
+        try {
+            return command.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    /**
+     * Put statistics of the writers to a map
+     *
+     * @param stats map of the statistics
+     */
+    public void collectStats(Map<String, Object> stats) {
+        int depth = 0;
+        for (Shard shard : shards) {
+            depth += shard.ring.size();
+        }
+        stats.put("writer.shards", shards.length);
+        stats.put("writer.queueDepth", depth);
+        stats.put("writer.batches", batches.get());
+        stats.put("writer.mutations", mutations.get());
+    }
+
+    /**
+     * Apply the waiting mutations and stop the writers
+     *
+     * @throws InterruptedException if interrupted while waiting for the writers
+     */
+    public void shutdown() throws InterruptedException {
+        running = false;
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.thread);
+            shard.thread.join();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.dataart.exercise.server;
+
+import com.dataart.exercise.entity.Sighting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Predicate;
+
+/**
+ * Executor of the sighting queries. A query which scans at least the parallel threshold of sightings is split
+ * into contiguous ranges of sightings, so the sightings of one bird may fall into several ranges. The ranges
+ * are filtered in parallel on a shared pool, and the results are merged in the original order.
+ * A smaller query is filtered sequentially in the calling thread
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ */
+public class SightingQueryExecutor {
+
+    /**
+     * Pool shared by all the queries, sized to the number of the cores
+     */
+    private final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    /**
+     * Number of the sightings to scan from which a query is executed in parallel. Every chunk of a parallel
+     * query has at least half of it
+     */
+    private final int parallelThreshold;
+    /**
+     * Maximum number of the chunks of one query, so one query cannot take all the cores
+     */
+    private final int maxParallelism;
+
+    /**
+     * Constructor for SightingQueryExecutor
+     *
+     * @param parallelThreshold number of the sightings to scan from which a query is executed in parallel
+     * @param maxParallelism maximum number of the chunks of one query
+     */
+    public SightingQueryExecutor(int parallelThreshold, int maxParallelism) {
+        this.parallelThreshold = parallelThreshold;
+        this.maxParallelism = maxParallelism;
+    }
+
+    /**
+     * Filter the sightings of the matching birds
+     *
+     * @param sightingGroups sightings grouped by bird in the order of the result, the groups are read without
+     *                       a lock by several threads and must not change during the query
+     * @param filter condition of the query
+     * @return List of the matching sightings in the order of the groups
+     */
+    public List<Sighting> filter(List<List<Sighting>> sightingGroups, Predicate<Sighting> filter) {
+        long[] offsets = new long[sightingGroups.size() + 1];
+        for (int i = 0; i < sightingGroups.size(); i++) {
+            offsets[i + 1] = offsets[i] + sightingGroups.get(i).size();
+        }
+        long cost = offsets[sightingGroups.size()];
+        if (cost < parallelThreshold || maxParallelism < 2) {
+            return filter(sightingGroups, offsets, 0, cost, filter);
+        }
+        int chunks = (int) Math.min(maxParallelism, Math.max(2, cost * 2 / parallelThreshold));
+        List<ForkJoinTask<List<Sighting>>> tasks = new ArrayList<>();
+        for (int i = 0; i < chunks - 1; i++) {
+            long lo = cost * i / chunks;
+            long hi = cost * (i + 1) / chunks;
+            tasks.add(pool.submit(() -> filter(sightingGroups, offsets, lo, hi, filter)));
+        }
+        // the calling thread filters the last chunk instead of waiting idle
+        List<Sighting> tail = filter(sightingGroups, offsets, cost * (chunks - 1) / chunks, cost, filter);
+        List<Sighting> result = new ArrayList<>();
+        for (ForkJoinTask<List<Sighting>> task : tasks) {
+            result.addAll(task.join());
+        }
+        result.addAll(tail);
+        return result;
+    }
+
+    /**
+     * Stop the pool
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Filter a chunk of the sightings. A chunk is a range of the positions of the sightings counted through
+     * all the groups, so it may start and end inside a group
+     *
+     * @param sightingGroups sightings grouped by bird
+     * @param offsets position of the first sighting of every group, followed by the number of all the sightings
+     * @param from position of the first sighting of the chunk
+     * @param to position after the last sighting of the chunk
+     * @param filter condition of the query
+     * @return List of the matching sightings of the chunk
+     */
+    private List<Sighting> filter(List<List<Sighting>> sightingGroups, long[] offsets, long from, long to,
+                                  Predicate<Sighting> filter) {
+        List<Sighting> result = new ArrayList<>();
+        int group = Arrays.binarySearch(offsets, from);
+        if (group < 0) {
+            group = -group - 2;
+        }
+        for (long position = from; position < to; position = offsets[++group]) {
+            List<Sighting> sightings = sightingGroups.get(group);
+            int end = (int) (Math.min(to, offsets[group + 1]) - offsets[group]);
+            for (int i = (int) (position - offsets[group]); i < end; i++) {
+                Sighting sighting = sightings.get(i);
+                if (filter.test(sighting)) {
+                    result.add(sighting);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -1,6 +1,6 @@
 package com.dataart.exercise.server;
 
-import com.dataart.exercise.entity.Bird;
+import com.dataart.exercise.archive.SegmentStore;
 import com.dataart.exercise.entity.Sighting;
 import com.dataart.exercise.service.FileService;
 import com.dataart.exercise.service.impl.FileServiceImpl;
@@ -10,16 +10,12 @@ import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.util.ArrayList;
+import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.function.Predicate;
 
 /**
  * Server class.
@@ -34,17 +30,14 @@ public class SocketServer {
      */
     private FileService fileService = new FileServiceImpl();
     /**
-     * Link to the in-memory storage for the birds
+     * In-memory storage for the birds and the sightings
      */
-    private Map<String, Bird> birds;
-    /**
-     * Link to the in-memory storage for the sightings
-     */
-    private Map<String, List<Sighting>> sightings;
+    private DataStore dataStore;
     /**
      * Allowed command line parameters for the server
      */
-    private final List<String> serverParameters = Arrays.asList("-port", "-data", "-proc_count");
+    private final List<String> serverParameters = Arrays.asList("-port", "-data", "-proc_count", "-queue_limit", "-client_limit", "-compression_threshold", "-watch_buffer",
+            "-watch_threads", "-parallel_threshold", "-query_parallelism", "-retention_days", "-write_shards");
     /**
      * A minimum allowed value for the server port
      */
@@ -58,9 +51,50 @@ public class SocketServer {
      */
     private int serverPort = 3000;
     /**
-     * The number of the workers which process different requests from the clients. Initialized by default to 2
+     * The number of the workers in every stage which process different requests from the clients. Initialized by default to 2
      */
     private int procCount = 2;
+    /**
+     * The maximum number of the requests waiting in every queue of the server. Initialized by default to 100
+     */
+    private int queueLimit = 100;
+    /**
+     * The maximum number of the connections in progress from one client address, 0 means no limit. Initialized by default to 0
+     */
+    private int clientLimit = 0;
+    /**
+     * The size in bytes of a response which is compressed if a client accepts a compression. Initialized by default to 8192
+     */
+    private int compressionThreshold = 8192;
+    /**
+     * The maximum number of the sightings waiting for the delivery to one watching client. Initialized by default to 1000
+     */
+    private int watchBuffer = 1000;
+    /**
+     * The number of the threads which deliver the sightings to the watching clients. Initialized by default to 2
+     */
+    private int watchThreads = 2;
+    /**
+     * A sighting query which scans at least this number of the sightings is executed in parallel, even for a single bird. Initialized by default to 50000
+     */
+    private int parallelThreshold = 50000;
+    /**
+     * The maximum number of the cores used by one sighting query. Initialized by default to a half of the cores
+     */
+    private int queryParallelism = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    /**
+     * The age in days after which the sightings are moved to the archive, 0 means no archive. Initialized by default to 0
+     */
+    private int retentionDays = 0;
+    /**
+     * The number of the shards whose mutations are applied by their own writer threads, 0 means that the workers
+     * apply the mutations themselves. Initialized by default to 0
+     */
+    private int writeShards = 0;
+    /**
+     * Version of the data saved to the persistent data store last time
+     */
+    private volatile long savedVersion = -1;
 
     /**
      *  Location of the folder where server keeps its data store. By default is <i>serverdata</i> in user's home directory
@@ -74,6 +108,10 @@ public class SocketServer {
      *  A name of a file where server stores information about sightings
      */
     private final String sightingsFileName = "sightings.json";
+    /**
+     *  A name of a folder where server stores the archived sightings
+     */
+    private final String segmentsFolderName = "segments";
 
     /**
      *  Task periodically saves the contents of in-memory data-structure to the persistent data store
@@ -85,15 +123,75 @@ public class SocketServer {
          */
         @Override
         public void run() {
+            // partially loaded data must not overwrite the data store, unchanged data is not saved again
+            if (!dataStore.isLoaded() || dataStore.getVersion() == savedVersion) {
+                return;
+            }
             try {
-                fileService.writeToFile(birds, folderToStore + File.separator + birdsFileName);
-                fileService.writeToFile(sightings, folderToStore + File.separator + sightingsFileName);
-            } catch (IOException e) {
+                saveDataStore();
+            } catch (IOException | RuntimeException e) {
                 System.err.println("There is an exception during persistence to file: " + e);
             }
         }
     }
 
+    /**
+     *  Task periodically moves the sightings older than the retention period to the archive
+     */
+    private class RetentionTask extends TimerTask {
+
+        /**
+         * Run task in a separate thread
+         */
+        @Override
+        public void run() {
+            if (!dataStore.isLoaded()) {
+                return;
+            }
+            try {
+                int archived = dataStore.archiveOlderThan(LocalDate.now().minusDays(retentionDays).atStartOfDay());
+                if (archived > 0) {
+                    // the archived sightings must not stay in the data store until the next persistence
+                    saveDataStore();
+                    System.out.println("Archived " + archived + " sightings");
+                }
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                // an exception thrown out of a task cancels the timer, and with it the persistence
+                System.err.println("There is an exception during archiving of the sightings: " + e);
+            }
+        }
+    }
+
+    /**
+     *  Task loads the persistent data store to the in-memory data-structure while the server accepts requests
+     */
+    private class LoadTask implements Runnable {
+
+        /**
+         * Run task in a separate thread
+         */
+        @Override
+        public void run() {
+            try {
+                long startTime = System.currentTimeMillis();
+                dataStore.getSegmentStore().open();
+                fileService.readBirdsFromFile(folderToStore + File.separator + birdsFileName, dataStore::addLoadedBird);
+                dataStore.birdsLoaded();
+                Predicate<Sighting> isArchived = dataStore.getSegmentStore().archivedFilter();
+                fileService.readSightingsFromFile(folderToStore + File.separator + sightingsFileName,
+                        sightingGroup -> dataStore.addLoadedSightings(sightingGroup, isArchived));
+                dataStore.sightingsLoaded();
+                System.out.println("Data store is loaded in " + (System.currentTimeMillis() - startTime) + " ms");
+                if (retentionDays > 0) {
+                    new RetentionTask().run();
+                }
+            } catch (Exception e) {
+                System.err.println("There is an exception during loading from file: " + e);
+                dataStore.loadFailed();
+            }
+        }
+    }
+
     /**
      * Start of SocketServer
      *
@@ -105,57 +203,68 @@ public class SocketServer {
         parseCommandlineArgs(args);
 
         fileService.checkFilesOrCreate(folderToStore, birdsFileName, sightingsFileName);
-        birds = fileService.readBirdsFromFile(folderToStore + File.separator + birdsFileName);
-        sightings = fileService.readSightingsFromFile(folderToStore + File.separator + sightingsFileName);
+        dataStore = new DataStore(new SegmentStore(folderToStore + File.separator + segmentsFolderName), writeShards);
+        Thread loader = new Thread(new LoadTask(), "data-loader");
+        loader.setDaemon(true);
+        loader.start();
 
         PersistenceTask persistenceTask = new PersistenceTask();
         Timer timer = new Timer(true);
         // save in-memory data structure to file system every 10 seconds
         timer.scheduleAtFixedRate(persistenceTask, 0, 10*1000);
+        if (retentionDays > 0) {
+            // move the old sightings to the archive every minute
+            timer.scheduleAtFixedRate(new RetentionTask(), 0, 60*1000);
+        }
 
         System.out.println("Server Listening......");
 
         try (ServerSocket ss = new ServerSocket(serverPort)) {
-            ExecutorService executor = Executors.newFixedThreadPool(procCount);
+            WatchDispatcher watchDispatcher = new WatchDispatcher(watchThreads, watchBuffer);
+            SightingQueryExecutor queryExecutor = new SightingQueryExecutor(parallelThreshold, queryParallelism);
+            AdmissionController admissionController = new AdmissionController(procCount, queueLimit, clientLimit, compressionThreshold,
+                    (s, request) -> new ServerWorker(s, request, dataStore, watchDispatcher, queryExecutor, compressionThreshold),
+                    watchDispatcher, dataStore);
             // connection timeout set to 5 seconds
             ss.setSoTimeout(5*1000);
-            List<Future<Boolean>> results = new ArrayList<>();
-            boolean stopRequired = false;
-            while (!stopRequired){
+            while (!admissionController.isStopRequested()){
                 try {
                     Socket s = ss.accept();
                     System.out.println("connection Established");
-                    Callable<Boolean> callable = new ServerWorker(s, birds, sightings);
-                    Future<Boolean> isStopping = executor.submit(callable);
-                    results.add(isStopping);
+                    admissionController.admit(s);
                 } catch (SocketTimeoutException timeoutException) {
                     //do nothing, just go to the next circle
                 }
-                List<Future> futureToRemove = new ArrayList<>();
-                for (Future<Boolean> future : results) {
-                    if (future.isDone()) {
-                        if (future.get()) {
-                            stopRequired = true;
-                            System.out.println("Server is shutting down");
-                            break;
-                        } else {
-                            futureToRemove.add(future);
-                        }
-                    }
-                }
-                results.removeAll(futureToRemove);
             }
-            executor.shutdown();
+            System.out.println("Server is shutting down");
+            admissionController.shutdown();
+            watchDispatcher.shutdown();
+            queryExecutor.shutdown();
         } catch(Exception e){
             System.err.println("Server error: " + e.getMessage());
         } finally {
             timer.cancel();
-            fileService.writeToFile(birds, folderToStore + File.separator + birdsFileName);
-            fileService.writeToFile(sightings, folderToStore + File.separator + sightingsFileName);
+            loader.join();
+            dataStore.shutdown();
+            if (dataStore.isLoaded()) {
+                saveDataStore();
+            }
         }
         System.out.println("Server is shutdown");
     }
 
+    /**
+     * Save the contents of in-memory data-structure to the persistent data store
+     *
+     * @throws IOException if the data store cannot be written
+     */
+    private synchronized void saveDataStore() throws IOException {
+        long version = dataStore.getVersion();
+        fileService.writeToFile(dataStore.getBirds(), folderToStore + File.separator + birdsFileName);
+        fileService.writeToFile(dataStore.getSightings(), folderToStore + File.separator + sightingsFileName);
+        savedVersion = version;
+    }
+
     /**
      * Parsing of the command line arguments
      *
@@ -184,6 +293,60 @@ public class SocketServer {
                         if (procCount < 1) {
                             throw new IllegalArgumentException("proc_count parameter should be a positive value");
                         }
+                        break;
+                    case "-queue_limit":
+                        queueLimit = Integer.parseInt(parameter);
+                        if (queueLimit < 1) {
+                            throw new IllegalArgumentException("queue_limit parameter should be a positive value");
+                        }
+                        break;
+                    case "-client_limit":
+                        clientLimit = Integer.parseInt(parameter);
+                        if (clientLimit < 0) {
+                            throw new IllegalArgumentException("client_limit parameter should not be a negative value");
+                        }
+                        break;
+                    case "-compression_threshold":
+                        compressionThreshold = Integer.parseInt(parameter);
+                        if (compressionThreshold < 0) {
+                            throw new IllegalArgumentException("compression_threshold parameter should not be a negative value");
+                        }
+                        break;
+                    case "-watch_buffer":
+                        watchBuffer = Integer.parseInt(parameter);
+                        if (watchBuffer < 1) {
+                            throw new IllegalArgumentException("watch_buffer parameter should be a positive value");
+                        }
+                        break;
+                    case "-watch_threads":
+                        watchThreads = Integer.parseInt(parameter);
+                        if (watchThreads < 1) {
+                            throw new IllegalArgumentException("watch_threads parameter should be a positive value");
+                        }
+                        break;
+                    case "-parallel_threshold":
+                        parallelThreshold = Integer.parseInt(parameter);
+                        if (parallelThreshold < 1) {
+                            throw new IllegalArgumentException("parallel_threshold parameter should be a positive value");
+                        }
+                        break;
+                    case "-query_parallelism":
+                        queryParallelism = Integer.parseInt(parameter);
+                        if (queryParallelism < 1) {
+                            throw new IllegalArgumentException("query_parallelism parameter should be a positive value");
+                        }
+                        break;
+                    case "-retention_days":
+                        retentionDays = Integer.parseInt(parameter);
+                        if (retentionDays < 0) {
+                            throw new IllegalArgumentException("retention_days parameter should not be a negative value");
+                        }
+                        break;
+                    case "-write_shards":
+                        writeShards = Integer.parseInt(parameter);
+                        if (writeShards < 0) {
+                            throw new IllegalArgumentException("write_shards parameter should not be a negative value");
+                        }
                 }
                 isNextValue = false;
             }
@@ -0,0 +1,333 @@
+package com.dataart.exercise.server;
+
+import com.alibaba.fastjson.JSON;
+import com.dataart.exercise.Action;
+import com.dataart.exercise.Compression;
+import com.dataart.exercise.dto.MessageDto;
+import com.dataart.exercise.entity.Sighting;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Dispatcher of the accepted sightings to the watching clients. Publishing never blocks a writer:
+ * a sighting is put to a bounded inbox, the fan-out thread matches it against the watched patterns
+ * and puts it to the bounded buffers of the subscribers, and the delivery threads send the buffers
+ * to the sockets. A subscriber whose buffer overflows or whose socket write stalls is too slow and is
+ * disconnected by an abortive close, so the fan-out thread never writes to a socket. A subscriber which
+ * closed its connection is detected by a short read from its socket and removed
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ */
+public class WatchDispatcher {
+
+    /**
+     * Capacity of the inbox of the published sightings
+     */
+    private static final int INBOX_CAPACITY = 10000;
+    /**
+     * Time in milliseconds a delivery thread may be blocked writing to one subscriber
+     */
+    private static final long WRITE_TIMEOUT = 5000;
+    /**
+     * Interval in milliseconds between the checks for the stalled writes
+     */
+    private static final long STALL_CHECK_INTERVAL = 500;
+    /**
+     * Time in milliseconds a check waits for the end of the stream of one subscriber
+     */
+    private static final int CLOSE_CHECK_TIMEOUT = 1;
+
+    /**
+     * Sightings waiting for the fan-out
+     */
+    private final BlockingQueue<Sighting> inbox = new ArrayBlockingQueue<>(INBOX_CAPACITY);
+    /**
+     * Current subscribers
+     */
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    /**
+     * Capacity of the buffer of every subscriber
+     */
+    private final int bufferLimit;
+    /**
+     * Thread which matches the sightings against the subscriptions
+     */
+    private final Thread fanOut;
+    /**
+     * Threads which send the buffered sightings to the subscribers
+     */
+    private final ExecutorService delivery;
+    /**
+     * Number of the sightings dropped because the inbox was full
+     */
+    private final AtomicLong droppedSightings = new AtomicLong();
+    /**
+     * Number of the subscribers disconnected because of a buffer overflow
+     */
+    private final AtomicLong slowDisconnects = new AtomicLong();
+    /**
+     * If FALSE the dispatcher is stopped
+     */
+    private volatile boolean running = true;
+
+    /**
+     * A client watching the sightings of the birds with matching names
+     */
+    private class Subscription {
+
+        /**
+         * Socket of the client
+         */
+        private final Socket s;
+        /**
+         * Writer to the socket
+         */
+        private final PrintWriter os;
+        /**
+         * Watched bird name pattern
+         */
+        private final Pattern birdNamePattern;
+        /**
+         * Sightings waiting for the delivery
+         */
+        private final BlockingQueue<Sighting> buffer;
+        /**
+         * Set while a delivery thread drains the buffer
+         */
+        private final AtomicBoolean draining = new AtomicBoolean();
+        /**
+         * Set when the subscription is closed
+         */
+        private final AtomicBoolean closed = new AtomicBoolean();
+        /**
+         * Time in nanoseconds when the current write to the socket started or 0 if no write is in progress
+         */
+        private volatile long writeStarted;
+
+        /**
+         * Constructor for Subscription
+         *
+         * @param s socket of the client
+         * @param birdNamePattern watched bird name pattern
+         * @throws IOException if there is an issue with the connection
+         */
+        Subscription(Socket s, Pattern birdNamePattern) throws IOException {
+            this.s = s;
+            this.s.setSoTimeout(CLOSE_CHECK_TIMEOUT);
+            this.os = new PrintWriter(s.getOutputStream());
+            this.birdNamePattern = birdNamePattern;
+            this.buffer = new ArrayBlockingQueue<>(bufferLimit);
+        }
+
+        /**
+         * Buffer a sighting if it matches the pattern. Disconnect the subscriber if the buffer is full
+         *
+         * @param sighting accepted sighting
+         */
+        void offer(Sighting sighting) {
+            if (!birdNamePattern.matcher(sighting.getBirdName()).matches()) {
+                return;
+            }
+            if (!buffer.offer(sighting)) {
+                slowDisconnects.incrementAndGet();
+                abort();
+                return;
+            }
+            if (draining.compareAndSet(false, true)) {
+                delivery.execute(this::drain);
+            }
+        }
+
+        /**
+         * Send the buffered sightings. Executed by a delivery thread
+         */
+        void drain() {
+            try {
+                writeStarted = System.nanoTime();
+                Sighting sighting;
+                while ((sighting = buffer.poll()) != null && !closed.get()) {
+                    os.println(JSON.toJSONString(new MessageDto(Action.WATCH, sighting)));
+                }
+                os.flush();
+                if (os.checkError()) {
+                    abort();
+                }
+            } finally {
+                writeStarted = 0;
+                draining.set(false);
+            }
+            // a sighting may be buffered after the loop but before the flag is reset
+            if (!buffer.isEmpty() && !closed.get() && draining.compareAndSet(false, true)) {
+                delivery.execute(this::drain);
+            }
+        }
+
+        /**
+         * Check if a delivery thread is blocked writing to the socket for too long
+         *
+         * @param now current time in nanoseconds
+         * @return TRUE if the write stalled
+         */
+        boolean isStalled(long now) {
+            long started = writeStarted;
+            return started != 0 && now - started > TimeUnit.MILLISECONDS.toNanos(WRITE_TIMEOUT);
+        }
+
+        /**
+         * Check if the client closed the connection. A watching client sends nothing after its request,
+         * so the received bytes are discarded, and only the end of the stream is waited for, shortly
+         *
+         * @return TRUE if the connection is closed by the client or broken
+         */
+        boolean isClosedByClient() {
+            try {
+                InputStream is = s.getInputStream();
+                for (int available = is.available(); available > 0; available = is.available()) {
+                    is.skip(available);
+                }
+                return is.read() < 0;
+            } catch (SocketTimeoutException e) {
+                return false;
+            } catch (IOException e) {
+                return true;
+            }
+        }
+
+        /**
+         * Remove the subscription and reset the connection. Never writes to the socket, so it does not block
+         * on a client which does not read, and a delivery thread blocked in a write to the socket is released
+         */
+        void abort() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            subscriptions.remove(this);
+            buffer.clear();
+            try {
+                s.setSoLinger(true, 0);
+                s.close();
+            } catch (IOException e) {
+                System.err.println("Socket Close Error");
+            }
+        }
+    }
+
+    /**
+     * Constructor for WatchDispatcher
+     *
+     * @param deliveryThreads number of the threads which send the sightings to the subscribers,
+     *                        independent of the number of the request workers
+     * @param bufferLimit capacity of the buffer of every subscriber
+     */
+    public WatchDispatcher(int deliveryThreads, int bufferLimit) {
+        this.bufferLimit = bufferLimit;
+        this.delivery = Executors.newFixedThreadPool(deliveryThreads);
+        this.fanOut = new Thread(this::fanOut, "watch-fan-out");
+        this.fanOut.setDaemon(true);
+        this.fanOut.start();
+    }
+
+    /**
+     * Register a client watching the sightings. The socket is owned by the dispatcher afterwards.
+     * The sightings are never compressed, so a client which offers a compression gets the <b>IDENTITY</b> header line first
+     *
+     * @param s socket of the client
+     * @param birdNamePattern watched bird name pattern
+     * @param compression compression offered by the client or null
+     * @throws IOException if there is an issue with the connection
+     */
+    public void subscribe(Socket s, Pattern birdNamePattern, Compression compression) throws IOException {
+        Subscription subscription = new Subscription(s, birdNamePattern);
+        if (compression != null) {
+            subscription.os.println(Compression.IDENTITY.name());
+        }
+        subscription.os.println(JSON.toJSONString(new MessageDto(Action.WATCH, null,
+                "Watching sightings of the birds matching " + birdNamePattern.pattern())));
+        subscription.os.flush();
+        subscriptions.add(subscription);
+    }
+
+    /**
+     * Publish an accepted sighting to the subscribers. Never blocks, the sighting is dropped if the inbox is full
+     *
+     * @param sighting accepted sighting
+     */
+    public void publish(Sighting sighting) {
+        if (!subscriptions.isEmpty() && !inbox.offer(sighting)) {
+            droppedSightings.incrementAndGet();
+        }
+    }
+
+    /**
+     * Put statistics of the dispatcher to a map
+     *
+     * @param stats map of the statistics
+     */
+    public void collectStats(Map<String, Object> stats) {
+        stats.put("watch.subscribers", subscriptions.size());
+        stats.put("watch.inboxDepth", inbox.size());
+        stats.put("watch.droppedSightings", droppedSightings.get());
+        stats.put("watch.slowDisconnects", slowDisconnects.get());
+    }
+
+    /**
+     * Disconnect the subscribers and stop the threads
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void shutdown() throws InterruptedException {
+        running = false;
+        fanOut.interrupt();
+        subscriptions.forEach(Subscription::abort);
+        delivery.shutdown();
+        delivery.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Match the published sightings against the subscriptions and disconnect the subscribers
+     * whose writes stalled or which closed their connections. Executed by the fan-out thread
+     */
+    private void fanOut() {
+        long lastStallCheck = System.nanoTime();
+        while (running) {
+            try {
+                Sighting sighting = inbox.poll(STALL_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+                if (sighting != null) {
+                    for (Subscription subscription : subscriptions) {
+                        subscription.offer(sighting);
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (now - lastStallCheck >= TimeUnit.MILLISECONDS.toNanos(STALL_CHECK_INTERVAL)) {
+                lastStallCheck = now;
+                for (Subscription subscription : subscriptions) {
+                    if (subscription.isStalled(now)) {
+                        slowDisconnects.incrementAndGet();
+                        subscription.abort();
+                    } else if (subscription.isClosedByClient()) {
+                        subscription.abort();
+                    }
+                }
+            }
+        }
+    }
+}
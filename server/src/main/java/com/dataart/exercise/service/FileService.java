@@ -6,6 +6,7 @@ import com.dataart.exercise.entity.Sighting;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Interface for a service to work with a file system.
@@ -47,4 +48,22 @@ public interface FileService {
      * @throws IOException
      */
     Map<String, List<Sighting>> readSightingsFromFile(String filePath) throws IOException;
+    /**
+     * Read birds from a file one by one without loading the whole file into memory
+     *
+     * @param filePath path to a file to read data from
+     * @param consumer receives every read bird
+     * @throws IOException
+     * @see com.dataart.exercise.entity.Bird
+     */
+    void readBirdsFromFile(String filePath, Consumer<Bird> consumer) throws IOException;
+    /**
+     * Read sightings from a file group by group without loading the whole file into memory.
+     * Every group contains the sightings of one bird
+     *
+     * @param filePath path to a file to read data from
+     * @param consumer receives every read group of sightings
+     * @throws IOException
+     */
+    void readSightingsFromFile(String filePath, Consumer<List<Sighting>> consumer) throws IOException;
 }
@@ -1,20 +1,32 @@
 package com.dataart.exercise.service.impl;
 
 import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.JSONReader;
+import com.alibaba.fastjson.JSONWriter;
+import com.alibaba.fastjson.parser.JSONToken;
+import com.dataart.exercise.MeasureUnit;
 import com.dataart.exercise.entity.Bird;
 import com.dataart.exercise.entity.Sighting;
+import com.dataart.exercise.event.DataLoadEvent;
+import com.dataart.exercise.event.PersistenceEvent;
 import com.dataart.exercise.service.FileService;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Service to work with a file system.
@@ -51,16 +63,30 @@ public class FileServiceImpl implements FileService {
     }
 
     /**
-     * Write data from Map to File
+     * Write data from Map to File as a JSON array in UTF-8, value by value
      * @param map map of objects to save
      * @param filePath path to a file where data should be saved
      * @throws IOException
      */
     public void writeToFile(Map<String, ?> map, String filePath) throws IOException {
-        try (FileWriter fileWriter = new FileWriter(filePath)) {
-            JSONArray birdArray = new JSONArray(map.values().stream().map(JSON::toJSONString).collect(Collectors.toList()));
-            birdArray.writeJSONString(fileWriter);
-            fileWriter.flush();
+        PersistenceEvent persistenceEvent = new PersistenceEvent();
+        persistenceEvent.begin();
+        int entryCount = 0;
+        // closing of JSONWriter does not close the underlying stream, so the file is closed by the outer resource
+        try (Writer fileWriter = new OutputStreamWriter(new FileOutputStream(filePath), StandardCharsets.UTF_8);
+             JSONWriter writer = new JSONWriter(fileWriter)) {
+            writer.startArray();
+            for (Object value : map.values()) {
+                writer.writeValue(value);
+                entryCount++;
+            }
+            writer.endArray();
+        }
+        if (persistenceEvent.shouldCommit()) {
+            persistenceEvent.filePath = filePath;
+            persistenceEvent.entryCount = entryCount;
+            persistenceEvent.fileSize = new File(filePath).length();
+            persistenceEvent.commit();
         }
     }
 
@@ -73,15 +99,9 @@ public class FileServiceImpl implements FileService {
      * @see com.dataart.exercise.entity.Bird
      */
     public Map<String, Bird> readBirdsFromFile(String filePath) throws IOException {
-        try (FileInputStream is = new FileInputStream(new File(filePath))) {
-            Map<String, Bird> birds = new ConcurrentHashMap<>();
-            if (is.available() <= 0) {
-                return birds;
-            }
-            JSONArray jsonArray = JSON.parseObject(is, JSONArray.class);
-            jsonArray.stream().map(o -> JSON.parseObject(o.toString(), Bird.class)).forEach(o -> birds.putIfAbsent(((Bird)o).getName(), (Bird)o));
-            return birds;
-        }
+        Map<String, Bird> birds = new ConcurrentHashMap<>();
+        readBirdsFromFile(filePath, bird -> birds.putIfAbsent(bird.getName(), bird));
+        return birds;
     }
 
     /**
@@ -92,21 +112,98 @@ public class FileServiceImpl implements FileService {
      * @throws IOException
      */
     public Map<String, List<Sighting>> readSightingsFromFile(String filePath) throws IOException {
-        try (FileInputStream is = new FileInputStream(new File(filePath))) {
-            Map<String, List<Sighting>> sightings = new ConcurrentHashMap<>();
-            if (is.available() <= 0) {
-                return sightings;
+        Map<String, List<Sighting>> sightings = new ConcurrentHashMap<>();
+        readSightingsFromFile(filePath, sightingGroup -> {
+            for (Sighting sighting : sightingGroup) {
+                List<Sighting> sightingList = sightings.getOrDefault(sighting.getBirdName(), new ArrayList());
+                sightingList.add(sighting);
+                sightings.put(sighting.getBirdName(), sightingList);
             }
-            JSONArray jsonArray = JSON.parseObject(is, JSONArray.class);
-            for (Object jsonObject : jsonArray) {
-                Sighting[] sightingArray = JSON.parseObject(jsonObject.toString(), Sighting[].class);
-                for (Sighting sighting : sightingArray) {
-                    List<Sighting> sightingList = sightings.getOrDefault(sighting.getBirdName(), new ArrayList());
-                    sightingList.add(sighting);
-                    sightings.put(sighting.getBirdName(), sightingList);
-                }
+        });
+        return sightings;
+    }
+
+    /**
+     * Read birds from a file one by one without loading the whole file into memory.
+     * Weight and height stored as text, with or without a unit, are converted to kilograms and centimeters
+     *
+     * @param filePath path to a file to read data from
+     * @param consumer receives every read bird
+     * @throws IOException
+     * @see com.dataart.exercise.entity.Bird
+     */
+    public void readBirdsFromFile(String filePath, Consumer<Bird> consumer) throws IOException {
+        readArrayFromFile(filePath, JSONObject.class, bird -> {
+            normalizeMeasure(bird, "weight", MeasureUnit::toKilograms);
+            normalizeMeasure(bird, "height", MeasureUnit::toCentimeters);
+            consumer.accept(bird.toJavaObject(Bird.class));
+        });
+    }
+
+    /**
+     * Convert a measure of a bird stored as text. A measure which cannot be converted is dropped
+     *
+     * @param bird bird as a JSON object
+     * @param key name of the measure
+     * @param converter converter of the text to the base unit
+     */
+    private void normalizeMeasure(JSONObject bird, String key, Function<String, Double> converter) {
+        Object value = bird.get(key);
+        if (value instanceof String) {
+            try {
+                bird.put(key, converter.apply((String) value));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Bird " + bird.get("name") + " has an invalid " + key + ": " + e.getMessage());
+                bird.remove(key);
             }
-            return sightings;
+        }
+    }
+
+    /**
+     * Read sightings from a file group by group without loading the whole file into memory.
+     * Every group contains the sightings of one bird
+     *
+     * @param filePath path to a file to read data from
+     * @param consumer receives every read group of sightings
+     * @throws IOException
+     */
+    public void readSightingsFromFile(String filePath, Consumer<List<Sighting>> consumer) throws IOException {
+        readArrayFromFile(filePath, Sighting[].class, sightings -> consumer.accept(Arrays.asList(sightings)));
+    }
+
+    /**
+     * Read a JSON array from a file element by element. An element is read straight into its type,
+     * or parsed from a JSON string as it was written by the earlier versions
+     *
+     * @param filePath path to a file to read data from
+     * @param elementType type of an element
+     * @param consumer receives every element
+     * @param <T> type of an element
+     * @throws IOException
+     */
+    private <T> void readArrayFromFile(String filePath, Class<T> elementType, Consumer<T> consumer) throws IOException {
+        File file = new File(filePath);
+        if (file.length() <= 0) {
+            return;
+        }
+        DataLoadEvent loadEvent = new DataLoadEvent();
+        loadEvent.begin();
+        int elementCount = 0;
+        try (JSONReader reader = new JSONReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            reader.startArray();
+            while (reader.hasNext()) {
+                consumer.accept(reader.peek() == JSONToken.LITERAL_STRING
+                        ? JSON.parseObject(reader.readString(), elementType)
+                        : reader.readObject(elementType));
+                elementCount++;
+            }
+            reader.endArray();
+        }
+        if (loadEvent.shouldCommit()) {
+            loadEvent.filePath = filePath;
+            loadEvent.elementCount = elementCount;
+            loadEvent.fileSize = file.length();
+            loadEvent.commit();
         }
     }
 }
@@ -0,0 +1,142 @@
+package com.dataart.exercise.archive;
+
+import com.dataart.exercise.entity.Sighting;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of SegmentStore: the archived sightings survive a reopening with their names in any language,
+ * and a month is kept in one segment
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ */
+public class SegmentStoreTest {
+
+    private static final Sighting CYRILLIC = new Sighting("\u0421\u0438\u043D\u0438\u0446\u0430", "\u041F\u0430\u0440\u043A \u0413\u043E\u0440\u044C\u043A\u043E\u0433\u043E", LocalDateTime.of(2020, 1, 5, 10, 0));
+    private static final Sighting CJK = new Sighting("\u4E39\u9876\u9E64", "\u624E\u9F99", LocalDateTime.of(2020, 1, 20, 8, 30));
+    private static final Sighting EMOJI = new Sighting("P\u00E1jaro \uD83D\uDC26", "Lagoa \"Azul\" \\ Sul", LocalDateTime.of(2020, 2, 1, 0, 0));
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File folder;
+
+    @Before
+    public void setUp() {
+        folder = new File(temporaryFolder.getRoot(), "segments");
+    }
+
+    @Test
+    public void nonAsciiNamesSurviveReopening() throws IOException {
+        SegmentStore store = open();
+        store.archive(Arrays.asList(CYRILLIC, CJK, EMOJI));
+
+        SegmentStore reopened = open();
+        assertEquals(new HashSet<>(Arrays.asList(CYRILLIC, CJK, EMOJI)), new HashSet<>(findAll(reopened)));
+        assertTrue(reopened.contains(CYRILLIC));
+        assertTrue(reopened.contains(EMOJI));
+        // the summaries are read back too, so a query by name finds its segment
+        assertEquals(Collections.singletonList(CJK),
+                reopened.find("\u4E39\u9876\u9E64"::equals, LocalDateTime.MIN, LocalDateTime.MAX, s -> true));
+    }
+
+    @Test
+    public void archivedFilterFindsNonAsciiSightings() throws IOException {
+        open().archive(Arrays.asList(CYRILLIC, EMOJI));
+
+        SegmentStore reopened = open();
+        assertTrue(reopened.archivedFilter().test(CYRILLIC));
+        assertTrue(reopened.archivedFilter().test(EMOJI));
+        assertFalse(reopened.archivedFilter().test(CJK));
+    }
+
+    @Test
+    public void monthIsMergedIntoOneSegment() throws IOException {
+        SegmentStore store = open();
+        store.archive(Collections.singletonList(CYRILLIC));
+        store.archive(Arrays.asList(CJK, CYRILLIC));
+        store.archive(Collections.singletonList(EMOJI));
+
+        Map<String, Object> stats = new HashMap<>();
+        store.collectStats(stats);
+        assertEquals(2, stats.get("archive.segments"));
+        assertEquals(3L, stats.get("archive.sightings"));
+        assertEquals(4, segmentFiles().length);
+    }
+
+    @Test
+    public void segmentsOfOneMonthAreMergedWhenOpened() throws IOException {
+        open().archive(Arrays.asList(CYRILLIC, CJK));
+        // a second copy of the segment, as left by a crash before the merged segments were deleted
+        for (File file : segmentFiles()) {
+            File copy = new File(folder, file.getName().replaceFirst("segment-2020-01-\\d+", "segment-2020-01-1"));
+            if (file.getName().endsWith(".meta.json")) {
+                String meta = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+                Files.write(copy.toPath(), meta.replaceAll("segment-2020-01-\\d+", "segment-2020-01-1").getBytes(StandardCharsets.UTF_8));
+            } else {
+                Files.copy(file.toPath(), copy.toPath());
+            }
+        }
+
+        SegmentStore reopened = open();
+        assertEquals(2, findAll(reopened).size());
+        assertEquals(2, segmentFiles().length);
+    }
+
+    @Test
+    public void removedBirdIsNotFound() throws IOException {
+        SegmentStore store = open();
+        store.archive(Arrays.asList(CYRILLIC, CJK, EMOJI));
+        long generation = store.getGeneration();
+
+        assertTrue(store.removeBird("\u0421\u0438\u043D\u0438\u0446\u0430"));
+        assertFalse(store.removeBird("\u0421\u0438\u043D\u0438\u0446\u0430"));
+        assertTrue(store.getGeneration() > generation);
+        assertEquals(new HashSet<>(Arrays.asList(CJK, EMOJI)), new HashSet<>(findAll(open())));
+    }
+
+    @Test
+    public void archivingSightingsAreMarkedUntilCompleted() throws IOException {
+        SegmentStore store = open();
+        store.archive(Collections.singletonList(CYRILLIC));
+        assertEquals(Collections.singleton(CYRILLIC), store.getArchiving());
+
+        long generation = store.getGeneration();
+        store.archivingCompleted();
+        assertTrue(store.getArchiving().isEmpty());
+        assertTrue(store.getGeneration() > generation);
+    }
+
+    private SegmentStore open() throws IOException {
+        SegmentStore store = new SegmentStore(folder.getPath());
+        store.open();
+        return store;
+    }
+
+    private static List<Sighting> findAll(SegmentStore store) throws IOException {
+        return store.find(name -> true, LocalDateTime.MIN, LocalDateTime.MAX, s -> true);
+    }
+
+    private File[] segmentFiles() {
+        return folder.listFiles((dir, name) -> name.startsWith("segment-"));
+    }
+}
@@ -0,0 +1,119 @@
+package com.dataart.exercise.server;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests of EncodingWriter: the bytes must be the same as String.getBytes, also when a surrogate pair
+ * is split between two writes
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ */
+public class EncodingWriterTest {
+
+    private static final String BIRD = "\uD83D\uDC26";
+
+    private final EncodingWriter writer = new EncodingWriter();
+
+    @Test
+    public void pairSplitBetweenArrays() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.open(out, encoder(StandardCharsets.UTF_8));
+        writer.write("a\uD83D".toCharArray(), 0, 2);
+        writer.write("\uDC26b".toCharArray(), 0, 2);
+        writer.close();
+        assertArrayEquals(("a" + BIRD + "b").getBytes(StandardCharsets.UTF_8), out.toByteArray());
+    }
+
+    @Test
+    public void pairSplitWithinOneArray() throws IOException {
+        char[] chars = ("x" + BIRD + "y").toCharArray();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.open(out, encoder(StandardCharsets.UTF_8));
+        writer.write(chars, 0, 2);
+        writer.write(chars, 2, 2);
+        writer.close();
+        assertArrayEquals(("x" + BIRD + "y").getBytes(StandardCharsets.UTF_8), out.toByteArray());
+    }
+
+    @Test
+    public void pairSplitAfterEmptyWrite() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.open(out, encoder(StandardCharsets.UTF_8));
+        writer.write(new char[] {'\uD83D'}, 0, 1);
+        writer.write(new char[0], 0, 0);
+        writer.write(new char[] {'\uDC26'}, 0, 1);
+        writer.close();
+        assertArrayEquals(BIRD.getBytes(StandardCharsets.UTF_8), out.toByteArray());
+    }
+
+    @Test
+    public void loneSurrogatesAreReplaced() throws IOException {
+        String text = "\uDC26a\uD83D";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.open(out, encoder(StandardCharsets.UTF_8));
+        writer.write(text.toCharArray(), 0, text.length());
+        writer.close();
+        assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), out.toByteArray());
+    }
+
+    @Test
+    public void writerIsReusedAfterUnpairedHighSurrogate() throws IOException {
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        writer.open(first, encoder(StandardCharsets.UTF_8));
+        writer.write("end\uD83D".toCharArray(), 0, 4);
+        writer.close();
+        assertArrayEquals("end\uD83D".getBytes(StandardCharsets.UTF_8), first.toByteArray());
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        writer.open(second, encoder(StandardCharsets.UTF_8));
+        writer.write("\uDC26".toCharArray(), 0, 1);
+        writer.close();
+        assertArrayEquals("\uDC26".getBytes(StandardCharsets.UTF_8), second.toByteArray());
+    }
+
+    @Test
+    public void randomSplitsMatchStringBytes() throws IOException {
+        Random random = new Random(7);
+        char[] alphabet = {'a', 'z', '\u00E9', '\u041F', '\u4E2D', '\uD83D', '\uDC26', '"', '\\'};
+        for (Charset charset : new Charset[] {StandardCharsets.UTF_8, StandardCharsets.US_ASCII}) {
+            for (int run = 0; run < 500; run++) {
+                // longer than the byte buffer of the writer, so the chunks are drained in between
+                char[] chars = new char[random.nextInt(20000)];
+                for (int i = 0; i < chars.length; i++) {
+                    chars[i] = alphabet[random.nextInt(alphabet.length)];
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                writer.open(out, encoder(charset));
+                for (int off = 0; off < chars.length; ) {
+                    int len = Math.min(chars.length - off, random.nextInt(7));
+                    writer.write(chars, off, len);
+                    off += len;
+                }
+                writer.close();
+                assertArrayEquals(new String(chars).getBytes(charset), out.toByteArray());
+            }
+        }
+    }
+
+    /**
+     * Encoder configured as the encoders of MessageCodec
+     *
+     * @param charset charset of the response
+     * @return CharsetEncoder which replaces the characters it cannot encode
+     */
+    private static CharsetEncoder encoder(Charset charset) {
+        return charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+}
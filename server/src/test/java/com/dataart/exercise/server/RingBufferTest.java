@@ -0,0 +1,114 @@
+package com.dataart.exercise.server;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of RingBuffer: capacity, order of the elements while the positions wrap around the slots,
+ * and many producers with one consumer
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ */
+public class RingBufferTest {
+
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwo() {
+        RingBuffer<Integer> ring = new RingBuffer<>(3);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.offer(4));
+        assertEquals(4, ring.size());
+    }
+
+    @Test
+    public void emptyBuffer() {
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        assertTrue(ring.isEmpty());
+        assertNull(ring.poll());
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    public void elementsKeepOrderWhenPositionsWrapAround() {
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        int next = 0;
+        int expected = 0;
+        // 3 elements per round never line up with the 4 slots, so every slot is reused at every offset
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(ring.offer(next++));
+            }
+            assertEquals(3, ring.size());
+            for (int i = 0; i < 3; i++) {
+                assertEquals(Integer.valueOf(expected++), ring.poll());
+            }
+            assertTrue(ring.isEmpty());
+        }
+    }
+
+    @Test
+    public void fullBufferAcceptsAgainAfterPoll() {
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(ring.offer(round * 4 + i));
+            }
+            assertFalse(ring.offer(-1));
+            assertEquals(Integer.valueOf(round * 4), ring.poll());
+            assertTrue(ring.offer(round * 4 + 4));
+            for (int i = 1; i <= 4; i++) {
+                assertEquals(Integer.valueOf(round * 4 + i), ring.poll());
+            }
+            assertTrue(ring.isEmpty());
+        }
+    }
+
+    @Test
+    public void concurrentProducersLoseNothing() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 20000;
+        RingBuffer<int[]> ring = new RingBuffer<>(16);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    int[] element = {producer, i};
+                    while (!ring.offer(element)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        int[] nextByProducer = new int[producers];
+        int received = 0;
+        while (received < producers * perProducer) {
+            int[] element = ring.poll();
+            if (element == null) {
+                Thread.yield();
+                continue;
+            }
+            // the elements of one producer are taken in the order they were put
+            assertEquals(nextByProducer[element[0]]++, element[1]);
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(ring.isEmpty());
+        for (int next : nextByProducer) {
+            assertEquals(perProducer, next);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.dataart.exercise.server;
+
+import com.dataart.exercise.entity.Sighting;
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of SightingQueryExecutor: a parallel query splits the sightings into chunks which start and end anywhere
+ * in the groups, and the merged result must be the same as the one of a sequential scan
+ *
+ * @author Eugene Lapin
+ * @version 1.0
+ */
+public class SightingQueryExecutorTest {
+
+    private final SightingQueryExecutor executor = new SightingQueryExecutor(4, 4);
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void smallQueryIsFilteredSequentially() {
+        List<List<Sighting>> groups = groups(1, 2);
+        assertEquals(sequential(groups, s -> true), executor.filter(groups, s -> true));
+    }
+
+    @Test
+    public void queryAtThresholdReturnsEverySightingOnceInOrder() {
+        List<List<Sighting>> groups = groups(2, 2);
+        assertEquals(sequential(groups, s -> true), executor.filter(groups, s -> true));
+    }
+
+    @Test
+    public void singleGroupIsSplitIntoChunks() {
+        List<List<Sighting>> groups = groups(37);
+        assertEquals(sequential(groups, s -> true), executor.filter(groups, s -> true));
+    }
+
+    @Test
+    public void chunksSkipEmptyGroups() {
+        List<List<Sighting>> groups = groups(0, 3, 0, 0, 5, 1, 0, 7, 0);
+        assertEquals(sequential(groups, s -> true), executor.filter(groups, s -> true));
+    }
+
+    @Test
+    public void chunkBoundariesFallOnGroupBoundaries() {
+        // 16 sightings in 4 chunks of 4, every chunk is exactly one group
+        List<List<Sighting>> groups = groups(4, 4, 4, 4);
+        assertEquals(sequential(groups, s -> true), executor.filter(groups, s -> true));
+    }
+
+    @Test
+    public void filterIsAppliedAcrossChunks() {
+        List<List<Sighting>> groups = groups(5, 9, 2, 11);
+        Predicate<Sighting> filter = s -> s.getSightingDateTime().getMinute() % 3 == 0;
+        assertEquals(sequential(groups, filter), executor.filter(groups, filter));
+    }
+
+    @Test
+    public void noGroups() {
+        assertEquals(Collections.emptyList(), executor.filter(Collections.emptyList(), s -> true));
+    }
+
+    @Test
+    public void randomGroupsMatchSequentialScan() {
+        Random random = new Random(42);
+        for (int run = 0; run < 500; run++) {
+            int[] sizes = new int[random.nextInt(8)];
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = random.nextInt(4) == 0 ? 0 : random.nextInt(30);
+            }
+            List<List<Sighting>> groups = groups(sizes);
+            Predicate<Sighting> filter = s -> s.getSightingDateTime().getMinute() % 2 == 0;
+            assertEquals(Arrays.toString(sizes), sequential(groups, filter), executor.filter(groups, filter));
+        }
+    }
+
+    /**
+     * Groups of sightings, every sighting is distinct
+     *
+     * @param sizes number of the sightings of every group
+     * @return List of the groups
+     */
+    private static List<List<Sighting>> groups(int... sizes) {
+        List<List<Sighting>> groups = new ArrayList<>();
+        LocalDateTime start = LocalDateTime.of(2026, 1, 1, 0, 0);
+        for (int group = 0; group < sizes.length; group++) {
+            List<Sighting> sightings = new ArrayList<>();
+            for (int i = 0; i < sizes[group]; i++) {
+                sightings.add(new Sighting("Bird " + group, "Location", start.plusMinutes(i)));
+            }
+            groups.add(Collections.unmodifiableList(sightings));
+        }
+        return groups;
+    }
+
+    private static List<Sighting> sequential(List<List<Sighting>> groups, Predicate<Sighting> filter) {
+        return groups.stream().flatMap(List::stream).filter(filter).collect(Collectors.toList());
+    }
+}